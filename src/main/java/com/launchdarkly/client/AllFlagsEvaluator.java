@@ -0,0 +1,150 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Evaluates every flag in the store for one user, as {@link LDClient#allFlags(LDUser)} does.
+ * <p>
+ * Stores that can provide a point-in-time snapshot are read through it, so the flags are neither copied nor
+ * seen half-way through an update. Large flag sets are split across a fork/join pool, which is created the
+ * first time it is needed.
+ */
+final class AllFlagsEvaluator implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(AllFlagsEvaluator.class);
+
+  // Below this many flags, handing the work to other threads costs more than it saves
+  static final int PARALLEL_THRESHOLD = 1000;
+  private static final int LEAF_SIZE = 128;
+  // Marks a flag that failed to evaluate, which is left out of the result
+  private static final JsonElement FAILED = new JsonPrimitive("failed");
+
+  private final FeatureStore store;
+  private final int parallelism;
+  private ForkJoinPool pool;
+  private boolean closed;
+
+  AllFlagsEvaluator(FeatureStore store) {
+    this(store, Runtime.getRuntime().availableProcessors());
+  }
+
+  AllFlagsEvaluator(FeatureStore store, int parallelism) {
+    this.store = store;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Returns the value of each flag for the user, with a null value for flags that would return the default.
+   * The context is only used when the flags are evaluated on the calling thread.
+   */
+  Map<String, JsonElement> evaluate(LDUser user, EvaluationContext context) {
+    ObservableFeatureStore observable = InMemoryFeatureStore.observableOf(store);
+    Map<String, FeatureFlag> flags = observable != null ? observable.snapshot() : store.all();
+    ForkJoinPool parallelPool = flags.size() >= PARALLEL_THRESHOLD ? getPool() : null;
+    if (parallelPool == null) {
+      return evaluateSequentially(flags, user, context);
+    }
+
+    FeatureFlag[] flagArray = flags.values().toArray(new FeatureFlag[flags.size()]);
+    JsonElement[] values = new JsonElement[flagArray.length];
+    try {
+      parallelPool.invoke(new EvaluateRange(flagArray, values, user, 0, flagArray.length));
+    } catch (RejectedExecutionException e) {
+      // The client was closed after the pool was handed out
+      return evaluateSequentially(flags, user, context);
+    }
+    Map<String, JsonElement> result = new HashMap<>(flagArray.length * 4 / 3 + 1);
+    for (int i = 0; i < flagArray.length; i++) {
+      if (!flagArray[i].isDeleted() && values[i] != FAILED) {
+        result.put(flagArray[i].getKey(), values[i]);
+      }
+    }
+    return result;
+  }
+
+  private Map<String, JsonElement> evaluateSequentially(Map<String, FeatureFlag> flags, LDUser user, EvaluationContext context) {
+    Map<String, JsonElement> result = new HashMap<>();
+    for (FeatureFlag flag : flags.values()) {
+      JsonElement value = flag.isDeleted() ? FAILED : evaluate(flag, user, context);
+      if (value != FAILED) {
+        result.put(flag.getKey(), value);
+      }
+    }
+    return result;
+  }
+
+  private JsonElement evaluate(FeatureFlag flag, LDUser user, EvaluationContext context) {
+    try {
+      CompiledFlag.Variation value = flag.getCompiled().evaluateVariation(user, context, store, null);
+      return value == null ? null : value.getValue();
+    } catch (EvaluationException e) {
+      logger.error("Exception caught when evaluating all flags:", e);
+      return FAILED;
+    }
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if (closed || parallelism < 2) {
+      return null;
+    }
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    return pool;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  /**
+   * Evaluates a range of flags, writing each value to the same index of {@code values}. Every leaf uses its
+   * own context, since contexts are not thread-safe.
+   */
+  private final class EvaluateRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final FeatureFlag[] flags;
+    private final JsonElement[] values;
+    private final LDUser user;
+    private final int from;
+    private final int to;
+
+    EvaluateRange(FeatureFlag[] flags, JsonElement[] values, LDUser user, int from, int to) {
+      this.flags = flags;
+      this.values = values;
+      this.user = user;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= LEAF_SIZE) {
+        EvaluationContext context = new EvaluationContext(null, user);
+        for (int i = from; i < to; i++) {
+          if (!flags[i].isDeleted()) {
+            values[i] = evaluate(flags[i], user, context);
+          }
+        }
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new EvaluateRange(flags, values, user, from, mid), new EvaluateRange(flags, values, user, mid, to));
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A user attribute name resolved once, when a flag is compiled, to either a built-in {@link UserAttribute} or a
+ * custom attribute. Reading the attribute from a user then needs neither a name lookup among the built-ins nor
+ * exception handling. Instances are immutable.
+ */
+final class AttributeAccessor {
+  private final UserAttribute builtIn;
+  private final String customName;
+
+  private AttributeAccessor(UserAttribute builtIn, String customName) {
+    this.builtIn = builtIn;
+    this.customName = customName;
+  }
+
+  static AttributeAccessor forName(String name) {
+    UserAttribute builtIn = UserAttribute.forName(name);
+    // Interned so that the custom attribute map usually matches the key by identity
+    return new AttributeAccessor(builtIn, builtIn == null && name != null ? name.intern() : null);
+  }
+
+  JsonElement get(LDUser user) {
+    if (builtIn != null) {
+      return builtIn.get(user);
+    }
+    return customName == null ? null : user.getCustom(customName);
+  }
+
+  @Override
+  public String toString() {
+    return builtIn != null ? builtIn.name() : String.valueOf(customName);
+  }
+}
@@ -0,0 +1,184 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+/**
+ * The current value of a user-independent feature flag, kept up to date by the client as flag changes arrive.
+ * <p>
+ * A flag can be bound with one of the {@code bind*Flag} methods of {@link LDClient} if it gives every
+ * user the same value: it is off, or it has no prerequisites, targets or rules and its fallthrough is a single
+ * variation. Reading a bound flag is a single volatile read and records no analytics events. If the flag is
+ * later deleted, changed to depend on the user, or given a value of the wrong type, {@link #get()} returns the
+ * default value until the flag becomes user-independent again.
+ * <p>
+ * Stores that report changes, such as the default in-memory store, update the value as soon as they change. With
+ * any other store, such as {@link RedisFeatureStore}, the value is updated after each change the client's streaming
+ * or polling connection writes to the store; such a flag cannot be bound when the client has no connection, in
+ * offline or LDD mode. Either way, {@link #get()} never reads the store.
+ * <p>
+ * Close the bound flag once it is no longer needed, so the client stops updating it.
+ *
+ * @param <T> the type of the flag's value
+ */
+public final class BoundFlag<T> implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(BoundFlag.class);
+
+  private final String key;
+  private final VariationType type;
+  private final T defaultValue;
+  private final FeatureStore store;
+  // Exactly one of these is set, depending on whether the store reports its own changes
+  private final ObservableFeatureStore observable;
+  private final FeatureStoreListeners updates;
+  private final ObservableFeatureStore.Listener listener;
+  private volatile T value;
+  // Guarded by this; a warning is only logged when the state changes, not on every store update
+  private FeatureFlag lastFlag;
+  private State state = State.USABLE;
+
+  private enum State {
+    USABLE, MISSING, USER_DEPENDENT, WRONG_TYPE
+  }
+
+  private BoundFlag(String key, VariationType type, T defaultValue, FeatureStore store,
+                    ObservableFeatureStore observable, FeatureStoreListeners updates) {
+    this.key = key;
+    this.type = type;
+    this.defaultValue = defaultValue;
+    this.store = store;
+    this.observable = observable;
+    this.updates = updates;
+    this.listener = new ObservableFeatureStore.Listener() {
+      @Override
+      public void storeChanged() {
+        refresh();
+      }
+    };
+  }
+
+  /**
+   * Returns a flag bound to the given store. If the store does not report its own changes, {@code updates} must
+   * be called after every write to it.
+   *
+   * @throws IllegalArgumentException if the flag does not exist or is not user-independent
+   * @throws IllegalStateException if the store does not report changes and {@code updates} is null
+   */
+  static <T> BoundFlag<T> bind(String key, VariationType type, T defaultValue, FeatureStore store,
+                               FeatureStoreListeners updates) {
+    ObservableFeatureStore observable = InMemoryFeatureStore.observableOf(store);
+    if (observable == null && updates == null) {
+      throw new IllegalStateException("Feature flag " + key + " cannot be bound: the feature store does not report "
+          + "changes, and this client does not receive any");
+    }
+    FeatureFlag flag = store.get(key);
+    if (flag == null) {
+      throw new IllegalArgumentException("Unknown feature flag " + key);
+    }
+    if (!flag.getCompiled().isUserIndependent()) {
+      throw new IllegalArgumentException("Feature flag " + key + " depends on the user and cannot be bound");
+    }
+    BoundFlag<T> bound = new BoundFlag<>(key, type, defaultValue, store, observable,
+        observable != null ? null : updates);
+    // Listen before reading, so a change made in between is not missed
+    if (observable != null) {
+      observable.addListener(bound.listener);
+    } else {
+      updates.add(bound.listener);
+    }
+    bound.refresh();
+    return bound;
+  }
+
+  /**
+   * @return the key of the bound feature flag
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return the flag's current value, or the default value if the flag does not currently have one
+   */
+  public T get() {
+    return value;
+  }
+
+  /**
+   * Stops updating this flag. Its value no longer changes afterwards.
+   */
+  @Override
+  public void close() {
+    if (observable != null) {
+      observable.removeListener(listener);
+    } else {
+      updates.remove(listener);
+    }
+  }
+
+  synchronized void refresh() {
+    FeatureFlag flag = store.get(key);
+    if (flag != null && flag == lastFlag) {
+      // Some other flag changed
+      return;
+    }
+    lastFlag = flag;
+    T newValue = defaultValue;
+    State newState = State.USABLE;
+    if (flag == null) {
+      newState = State.MISSING;
+    } else if (!flag.getCompiled().isUserIndependent()) {
+      newState = State.USER_DEPENDENT;
+    } else {
+      CompiledFlag.Variation variation = flag.getCompiled().getConstantVariation();
+      if (variation != null && variation.jsonValue() != null) {
+        try {
+          type.assertResultType(variation.jsonValue());
+          newValue = valueOf(variation);
+        } catch (EvaluationException e) {
+          newState = State.WRONG_TYPE;
+        }
+      }
+    }
+    if (newState != state) {
+      state = newState;
+      logState();
+    }
+    value = newValue;
+  }
+
+  private void logState() {
+    switch (state) {
+      case MISSING:
+        logger.warn("Bound feature flag " + key + " no longer exists; using default value");
+        break;
+      case USER_DEPENDENT:
+        logger.warn("Bound feature flag " + key + " now depends on the user; using default value");
+        break;
+      case WRONG_TYPE:
+        logger.warn("Bound feature flag " + key + " does not have a value of the expected type; using default value");
+        break;
+      default:
+        logger.info("Bound feature flag " + key + " has a usable value again");
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private T valueOf(CompiledFlag.Variation variation) {
+    switch (type) {
+      case Boolean:
+        return (T) java.lang.Boolean.valueOf(variation.booleanValue());
+      case Integer:
+        return (T) java.lang.Integer.valueOf(variation.intValue());
+      case Double:
+        return (T) java.lang.Double.valueOf(variation.doubleValue());
+      case String:
+        return (T) variation.stringValue();
+      default:
+        return (T) variation.jsonValue();
+    }
+  }
+}
@@ -0,0 +1,312 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A {@link Clause} whose operator and values have been resolved ahead of time. Instances are immutable and are
+ * shared by every evaluation of the flag version they were compiled from.
+ */
+final class CompiledClause {
+  private final static Logger logger = LoggerFactory.getLogger(CompiledClause.class);
+  private static final JsonPrimitive[] NO_VALUES = new JsonPrimitive[0];
+
+  private final AttributeAccessor attribute;
+  private final ValueMatcher matcher;
+  private final boolean negate;
+
+  CompiledClause(Clause clause, String flagKey) {
+    this.attribute = AttributeAccessor.forName(clause.getAttribute());
+    List<JsonPrimitive> values = clause.getValues();
+    JsonPrimitive[] valueArray = values == null ? NO_VALUES : values.toArray(new JsonPrimitive[values.size()]);
+    this.matcher = createMatcher(clause.getOp(), valueArray, flagKey);
+    this.negate = clause.isNegate();
+  }
+
+  boolean matchesUser(LDUser user) {
+    if (matcher == NEVER_MATCHES) {
+      // A clause with an unknown operator never matches, even when negated
+      return false;
+    }
+    JsonElement userValue = attribute.get(user);
+    if (userValue == null) {
+      return false;
+    }
+
+    if (userValue.isJsonArray()) {
+      JsonArray array = userValue.getAsJsonArray();
+      for (JsonElement jsonElement : array) {
+        if (!jsonElement.isJsonPrimitive()) {
+          logger.error("Invalid custom attribute value in user object: " + jsonElement);
+          return false;
+        }
+        if (matcher.matchAny(jsonElement.getAsJsonPrimitive())) {
+          return maybeNegate(true);
+        }
+      }
+      return maybeNegate(false);
+    } else if (userValue.isJsonPrimitive()) {
+      return maybeNegate(matcher.matchAny(userValue.getAsJsonPrimitive()));
+    }
+    logger.warn("Got unexpected user attribute type: " + userValue.getClass().getName() + " for user key: "
+        + user.getKey() + " and attribute: " + attribute);
+    return false;
+  }
+
+  private boolean maybeNegate(boolean b) {
+    if (negate)
+      return !b;
+    else
+      return b;
+  }
+
+  private static ValueMatcher createMatcher(Operator op, JsonPrimitive[] values, String flagKey) {
+    if (op == null) {
+      // An operator this version of the SDK doesn't know about deserializes as null; see matchesUser.
+      return NEVER_MATCHES;
+    }
+    switch (op) {
+      case matches:
+        return new RegexMatcher(values, flagKey);
+      case in:
+        return new InMatcher(values);
+      case lessThan:
+      case lessThanOrEqual:
+      case greaterThan:
+      case greaterThanOrEqual:
+        return new NumericMatcher(op, values);
+      case before:
+      case after:
+        return new DateMatcher(op, values);
+      default:
+        return new OperatorMatcher(op, values);
+    }
+  }
+
+  /**
+   * Tests a single user value against all of a clause's values, which are interpreted as an OR.
+   */
+  private static abstract class ValueMatcher {
+    abstract boolean matchAny(JsonPrimitive userValue);
+  }
+
+  private static final ValueMatcher NEVER_MATCHES = new ValueMatcher() {
+    @Override
+    boolean matchAny(JsonPrimitive userValue) {
+      return false;
+    }
+  };
+
+  private static final class OperatorMatcher extends ValueMatcher {
+    private final Operator op;
+    private final JsonPrimitive[] values;
+
+    OperatorMatcher(Operator op, JsonPrimitive[] values) {
+      this.op = op;
+      this.values = values;
+    }
+
+    @Override
+    boolean matchAny(JsonPrimitive userValue) {
+      for (JsonPrimitive v : values) {
+        if (op.apply(userValue, v)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Matches against patterns compiled once per flag version. Compiled patterns are thread-safe, so every
+   * evaluating thread shares them. A value that is not a string or not a valid pattern is reported when the
+   * flag is loaded and then never matches.
+   */
+  private static final class RegexMatcher extends ValueMatcher {
+    private final Pattern[] patterns;
+
+    RegexMatcher(JsonPrimitive[] values, String flagKey) {
+      Pattern[] compiled = new Pattern[values.length];
+      int count = 0;
+      for (JsonPrimitive v : values) {
+        if (v == null || !v.isString()) {
+          continue;
+        }
+        try {
+          compiled[count] = Pattern.compile(v.getAsString());
+          count++;
+        } catch (PatternSyntaxException e) {
+          logger.warn("Invalid regular expression in a rule for flag: " + flagKey + "; it will never match: " + e.getMessage());
+        }
+      }
+      this.patterns = new Pattern[count];
+      System.arraycopy(compiled, 0, patterns, 0, count);
+    }
+
+    @Override
+    boolean matchAny(JsonPrimitive userValue) {
+      if (!userValue.isString()) {
+        return false;
+      }
+      String s = userValue.getAsString();
+      for (Pattern p : patterns) {
+        if (p.matcher(s).find()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Set membership for the {@code in} operator. Strings go into a hash set and numbers into a sorted array of
+   * doubles, so the cost of a lookup barely depends on how many values the clause lists. Numbers compare as
+   * doubles, as the operator always did.
+   */
+  private static final class InMatcher extends ValueMatcher {
+    private final Set<String> strings = new HashSet<>();
+    private final double[] numbers;
+    private final boolean hasTrue;
+    private final boolean hasFalse;
+
+    InMatcher(JsonPrimitive[] values) {
+      double[] nums = new double[values.length];
+      int count = 0;
+      boolean t = false;
+      boolean f = false;
+      for (JsonPrimitive v : values) {
+        if (v == null) {
+          continue;
+        }
+        if (v.isString()) {
+          strings.add(v.getAsString());
+        } else if (v.isNumber()) {
+          nums[count++] = normalize(v.getAsDouble());
+        } else if (v.isBoolean()) {
+          if (v.getAsBoolean()) {
+            t = true;
+          } else {
+            f = true;
+          }
+        }
+      }
+      this.numbers = Arrays.copyOf(nums, count);
+      Arrays.sort(numbers);
+      this.hasTrue = t;
+      this.hasFalse = f;
+    }
+
+    @Override
+    boolean matchAny(JsonPrimitive userValue) {
+      if (userValue.isString()) {
+        return strings.contains(userValue.getAsString());
+      } else if (userValue.isNumber()) {
+        return numbers.length > 0 && Arrays.binarySearch(numbers, normalize(userValue.getAsDouble())) >= 0;
+      } else if (userValue.isBoolean()) {
+        return userValue.getAsBoolean() ? hasTrue : hasFalse;
+      }
+      return false;
+    }
+
+    // Arrays.binarySearch tells -0.0 and 0.0 apart, but == does not
+    private static double normalize(double d) {
+      return d == 0.0 ? 0.0 : d;
+    }
+  }
+
+  /**
+   * The numeric comparison operators, with the clause values converted to doubles once instead of being parsed
+   * from their decimal strings on every comparison.
+   */
+  private static final class NumericMatcher extends ValueMatcher {
+    private final Operator op;
+    private final double[] values;
+
+    NumericMatcher(Operator op, JsonPrimitive[] clauseValues) {
+      this.op = op;
+      double[] nums = new double[clauseValues.length];
+      int count = 0;
+      for (JsonPrimitive v : clauseValues) {
+        if (v != null && v.isNumber()) {
+          nums[count++] = v.getAsDouble();
+        }
+      }
+      this.values = Arrays.copyOf(nums, count);
+    }
+
+    @Override
+    boolean matchAny(JsonPrimitive userValue) {
+      if (!userValue.isNumber()) {
+        return false;
+      }
+      double u = userValue.getAsDouble();
+      for (double c : values) {
+        if (compare(u, c)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean compare(double u, double c) {
+      switch (op) {
+        case lessThan:
+          return u < c;
+        case lessThanOrEqual:
+          return u <= c;
+        case greaterThan:
+          return u > c;
+        default:
+          return u >= c;
+      }
+    }
+  }
+
+  /**
+   * The {@code before} and {@code after} operators, with the clause timestamps parsed to epoch millis once.
+   */
+  private static final class DateMatcher extends ValueMatcher {
+    private final boolean before;
+    private final long[] values;
+
+    DateMatcher(Operator op, JsonPrimitive[] clauseValues) {
+      this.before = op == Operator.before;
+      long[] millis = new long[clauseValues.length];
+      int count = 0;
+      for (JsonPrimitive v : clauseValues) {
+        long m = v == null ? Util.INVALID_TIMESTAMP : Util.jsonPrimitiveToMillis(v);
+        if (m != Util.INVALID_TIMESTAMP) {
+          millis[count++] = m;
+        }
+      }
+      this.values = Arrays.copyOf(millis, count);
+    }
+
+    @Override
+    boolean matchAny(JsonPrimitive userValue) {
+      if (values.length == 0) {
+        return false;
+      }
+      long u = Util.jsonPrimitiveToMillis(userValue);
+      if (u == Util.INVALID_TIMESTAMP) {
+        return false;
+      }
+      for (long c : values) {
+        if (before ? u < c : u > c) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
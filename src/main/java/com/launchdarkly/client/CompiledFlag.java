@@ -0,0 +1,414 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, pre-resolved form of a {@link FeatureFlag}. It is built once when a flag enters a
+ * {@link FeatureStore}, and every evaluation of that flag version walks this tree instead of the raw lists
+ * populated by Gson.
+ * <p>
+ * A flag that is off, or that is on but has no prerequisites, targets or rules and a fixed fallthrough,
+ * collapses to a constant result.
+ * <p>
+ * Stores that track prerequisites with a {@link PrerequisiteGraph} store a copy of the {@link FeatureFlag} whose
+ * compiled prerequisites point directly at the compiled prerequisite flags. Unlinked prerequisites are looked up in the
+ * store during evaluation.
+ */
+final class CompiledFlag {
+  private final static Logger logger = LoggerFactory.getLogger(CompiledFlag.class);
+  // Bounds prerequisite lookups through a store, where a cycle could otherwise recurse without end
+  private static final int MAX_PREREQUISITE_DEPTH = 100;
+
+  private final String key;
+  private final int version;
+  private final boolean on;
+  private final Variation[] variations;
+  private final Variation offVariation;
+  private final CompiledPrerequisite[] prerequisites;
+  private final TargetIndex targets;
+  private final CompiledRule[] rules;
+  private final CompiledRollout fallthrough;
+  private final boolean constant;
+  private final Variation constantVariation;
+
+  CompiledFlag(FeatureFlag flag) {
+    this.key = flag.getKey();
+    this.version = flag.getVersion();
+    this.on = flag.isOn();
+
+    List<JsonElement> variationValues = flag.getVariations();
+    int variationCount = variationValues == null ? 0 : variationValues.size();
+    this.variations = new Variation[variationCount];
+    for (int i = 0; i < variationCount; i++) {
+      variations[i] = new Variation(i, variationValues.get(i), null);
+    }
+    this.offVariation = flag.getOffVariation() == null ? null :
+        Variation.resolve(flag.getOffVariation(), variations, "Invalid off variation index");
+
+    List<Prerequisite> prereqs = flag.getPrerequisites();
+    this.prerequisites = new CompiledPrerequisite[prereqs == null ? 0 : prereqs.size()];
+    for (int i = 0; i < prerequisites.length; i++) {
+      prerequisites[i] = new CompiledPrerequisite(prereqs.get(i).getKey(), prereqs.get(i).getVariation());
+    }
+
+    this.targets = TargetIndex.build(flag.getTargets(), variations);
+
+    List<Rule> flagRules = flag.getRules();
+    this.rules = new CompiledRule[flagRules == null ? 0 : flagRules.size()];
+    for (int i = 0; i < rules.length; i++) {
+      Rule r = flagRules.get(i);
+      List<Clause> clauses = r.getClauses();
+      CompiledClause[] compiledClauses = new CompiledClause[clauses == null ? 0 : clauses.size()];
+      for (int j = 0; j < compiledClauses.length; j++) {
+        compiledClauses[j] = new CompiledClause(clauses.get(j), key);
+      }
+      rules[i] = new CompiledRule(compiledClauses, new CompiledRollout(r, key, flag.getSalt(), variations));
+    }
+
+    this.fallthrough = flag.getFallthrough() == null ? null :
+        new CompiledRollout(flag.getFallthrough(), key, flag.getSalt(), variations);
+
+    if (!on) {
+      this.constant = true;
+      this.constantVariation = offVariation;
+    } else if (prerequisites.length == 0 && targets.size() == 0 && rules.length == 0
+        && fallthrough != null && fallthrough.getFixedVariation() != null && fallthrough.getFixedVariation().value != null) {
+      this.constant = true;
+      this.constantVariation = fallthrough.getFixedVariation();
+    } else {
+      this.constant = false;
+      this.constantVariation = null;
+    }
+  }
+
+  private CompiledFlag(CompiledFlag base, CompiledPrerequisite[] prerequisites) {
+    this.key = base.key;
+    this.version = base.version;
+    this.on = base.on;
+    this.variations = base.variations;
+    this.offVariation = base.offVariation;
+    this.prerequisites = prerequisites;
+    this.targets = base.targets;
+    this.rules = base.rules;
+    this.fallthrough = base.fallthrough;
+    this.constant = base.constant;
+    this.constantVariation = base.constantVariation;
+  }
+
+  /**
+   * Returns a copy of this flag whose prerequisites are bound to the given compiled flags. A null target means
+   * the prerequisite does not exist, and a cyclic prerequisite always fails.
+   */
+  CompiledFlag link(CompiledFlag[] targets, boolean[] cyclic) {
+    if (prerequisites.length == 0) {
+      return this;
+    }
+    CompiledPrerequisite[] linked = new CompiledPrerequisite[prerequisites.length];
+    for (int i = 0; i < linked.length; i++) {
+      linked[i] = new CompiledPrerequisite(prerequisites[i].key, prerequisites[i].variation, true, targets[i], cyclic[i]);
+    }
+    return new CompiledFlag(this, linked);
+  }
+
+  /**
+   * Returns true if {@link #link} with the same arguments would produce a flag that behaves exactly like this one.
+   */
+  boolean isLinkedTo(CompiledFlag[] targets, boolean[] cyclic) {
+    for (int i = 0; i < prerequisites.length; i++) {
+      CompiledPrerequisite p = prerequisites[i];
+      if (!p.linked || p.flag != targets[i] || p.cyclic != cyclic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  boolean isOn() {
+    return on;
+  }
+
+  Variation[] getVariations() {
+    return variations;
+  }
+
+  /**
+   * Returns true if the flag evaluates to the same variation for every user: it is off, or it has no
+   * prerequisites, targets or rules and a fixed fallthrough variation.
+   */
+  boolean isUserIndependent() {
+    return constant;
+  }
+
+  /**
+   * Returns the variation every user gets, or null if the flag is not {@link #isUserIndependent() user-independent}
+   * or that variation is missing or invalid.
+   */
+  Variation getConstantVariation() {
+    if (!constant || constantVariation == null || constantVariation.error != null) {
+      return null;
+    }
+    return constantVariation;
+  }
+
+  int getPrerequisiteCount() {
+    return prerequisites.length;
+  }
+
+  String getPrerequisiteKey(int i) {
+    return prerequisites[i].key;
+  }
+
+  List<String> getPrerequisiteKeys() {
+    List<String> keys = new ArrayList<>(prerequisites.length);
+    for (CompiledPrerequisite prereq : prerequisites) {
+      keys.add(prereq.key);
+    }
+    return keys;
+  }
+
+  /**
+   * Evaluates the flag for a user, falling back to the off variation if the flag is off, a prerequisite
+   * failed, or no variation was selected.
+   */
+  JsonElement evaluate(LDUser user, FeatureStore featureStore, List<FeatureRequestEvent> events) throws EvaluationException {
+    Variation variation = evaluateVariation(user, null, featureStore, events);
+    return variation == null ? null : variation.value;
+  }
+
+  /**
+   * Like {@link #evaluate}, but returns the selected {@link Variation} so that callers can use its pre-typed
+   * value. Returns null if no value was selected. Prerequisite events are not recorded if {@code events} is null.
+   */
+  Variation evaluateVariation(LDUser user, FeatureStore featureStore, List<FeatureRequestEvent> events) throws EvaluationException {
+    return evaluateVariation(user, null, featureStore, events);
+  }
+
+  /**
+   * Like {@link #evaluateVariation(LDUser, FeatureStore, List)}, but reuses what the context has already worked out
+   * for the user. The context may be null.
+   */
+  Variation evaluateVariation(LDUser user, EvaluationContext context, FeatureStore featureStore, List<FeatureRequestEvent> events) throws EvaluationException {
+    if (constant) {
+      return checked(constantVariation);
+    }
+    Variation variation = evaluateOn(user, context, featureStore, events, 0);
+    if (variation != null) {
+      return variation;
+    }
+    return checked(offVariation);
+  }
+
+  // Returning either a Variation or null indicating prereq failure/error.
+  private Variation evaluateOn(LDUser user, EvaluationContext context, FeatureStore featureStore, List<FeatureRequestEvent> events, int depth) throws EvaluationException {
+    if (constant) {
+      // Only reached for prerequisites, which are known to be on.
+      return checked(constantVariation);
+    }
+    if (depth > MAX_PREREQUISITE_DEPTH) {
+      logger.error("Prerequisites of flag: " + key + " are nested too deeply; they may contain a cycle");
+      return null;
+    }
+    boolean prereqOk = true;
+    for (CompiledPrerequisite prereq : prerequisites) {
+      CompiledFlag prereqFlag = prereq.resolve(featureStore);
+      Variation prereqEvalResult = null;
+      if (prereqFlag == null) {
+        logger.error("Could not retrieve prerequisite flag: " + prereq.key + " when evaluating: " + key);
+        return null;
+      }
+      if (prereq.cyclic) {
+        logger.error("Prerequisite flag: " + prereq.key + " of flag: " + key + " forms a cycle and cannot be satisfied");
+        prereqOk = false;
+      } else if (prereqFlag.isOn()) {
+        prereqEvalResult = prereqFlag.evaluateOn(user, context, featureStore, events, depth + 1);
+        try {
+          JsonElement variation = prereqFlag.getVariation(prereq.variation);
+          if (prereqEvalResult == null || variation == null || !prereqEvalResult.value.equals(variation)) {
+            prereqOk = false;
+          }
+        } catch (EvaluationException err) {
+          logger.warn("Error evaluating prerequisites: " + err.getMessage());
+          prereqOk = false;
+        }
+      } else {
+        prereqOk = false;
+      }
+      //We don't short circuit and also send events for each prereq.
+      if (events != null) {
+        events.add(new FeatureRequestEvent(prereqFlag.getKey(), user, prereqEvalResult == null ? null : prereqEvalResult.value,
+            null, prereqFlag.getVersion(), key));
+      }
+    }
+    if (prereqOk) {
+      return checked(selectVariation(user, context));
+    }
+    return null;
+  }
+
+  private Variation selectVariation(LDUser user, EvaluationContext context) throws EvaluationException {
+    // Check to see if targets match
+    Variation targeted = targets.get(context == null ? user.getKey().getAsString() : context.getUserKey());
+    if (targeted != null) {
+      return targeted;
+    }
+    // Now walk through the rules and see if any match
+    for (CompiledRule rule : rules) {
+      if (rule.matchesUser(user)) {
+        return rule.rollout.variationForUser(user, context);
+      }
+    }
+    // Walk through the fallthrough and see if it matches
+    if (fallthrough == null) {
+      throw new EvaluationException("Flag has no fallthrough");
+    }
+    return fallthrough.variationForUser(user, context);
+  }
+
+  private JsonElement getVariation(int index) throws EvaluationException {
+    return valueOf(Variation.resolve(index, variations));
+  }
+
+  private static JsonElement valueOf(Variation variation) throws EvaluationException {
+    // A null variation means nothing was selected, and the caller decides what to serve instead
+    return variation == null ? null : variation.getValue();
+  }
+
+  // Reports an invalid variation, and treats a variation without a value as nothing selected
+  private static Variation checked(Variation variation) throws EvaluationException {
+    return valueOf(variation) == null ? null : variation;
+  }
+
+  /**
+   * A variation index resolved against the flag's variation list. An index that does not refer to a valid
+   * variation is kept as an error, so that it is still reported each time it is selected during evaluation.
+   * <p>
+   * Primitive values are also unwrapped ahead of time, so that typed variation methods can return them without
+   * converting or allocating.
+   */
+  static final class Variation {
+    private final int index;
+    private final JsonElement value;
+    private final String error;
+    private final boolean booleanValue;
+    private final int intValue;
+    private final double doubleValue;
+    private final String stringValue;
+
+    private Variation(int index, JsonElement value, String error) {
+      this.index = index;
+      this.value = value;
+      this.error = error;
+      JsonPrimitive p = value != null && value.isJsonPrimitive() ? value.getAsJsonPrimitive() : null;
+      this.booleanValue = p != null && p.isBoolean() && p.getAsBoolean();
+      this.intValue = p != null && p.isNumber() ? p.getAsInt() : 0;
+      this.doubleValue = p != null && p.isNumber() ? p.getAsDouble() : 0;
+      this.stringValue = p != null && p.isString() ? p.getAsString() : null;
+    }
+
+    static Variation resolve(int index, Variation[] variations) {
+      return resolve(index, variations, "Invalid index");
+    }
+
+    static Variation resolve(int index, Variation[] variations, String error) {
+      if (index < 0 || index >= variations.length) {
+        return new Variation(index, null, error);
+      }
+      return variations[index];
+    }
+
+    int getIndex() {
+      return index;
+    }
+
+    JsonElement getValue() throws EvaluationException {
+      if (error != null) {
+        throw new EvaluationException(error);
+      }
+      return value;
+    }
+
+    /**
+     * Returns the value without checking for an invalid index; only for variations returned by evaluation.
+     */
+    JsonElement jsonValue() {
+      return value;
+    }
+
+    boolean booleanValue() {
+      return booleanValue;
+    }
+
+    int intValue() {
+      return intValue;
+    }
+
+    double doubleValue() {
+      return doubleValue;
+    }
+
+    String stringValue() {
+      return stringValue;
+    }
+  }
+
+  private static final class CompiledPrerequisite {
+    private final String key;
+    private final int variation;
+    private final boolean linked;
+    private final CompiledFlag flag;
+    private final boolean cyclic;
+
+    CompiledPrerequisite(String key, int variation) {
+      this(key, variation, false, null, false);
+    }
+
+    CompiledPrerequisite(String key, int variation, boolean linked, CompiledFlag flag, boolean cyclic) {
+      this.key = key;
+      this.variation = variation;
+      this.linked = linked;
+      this.flag = flag;
+      this.cyclic = cyclic;
+    }
+
+    CompiledFlag resolve(FeatureStore featureStore) {
+      if (linked) {
+        return flag;
+      }
+      FeatureFlag featureFlag = featureStore.get(key);
+      return featureFlag == null ? null : featureFlag.getCompiled();
+    }
+  }
+
+  private static final class CompiledRule {
+    private final CompiledClause[] clauses;
+    private final CompiledRollout rollout;
+
+    CompiledRule(CompiledClause[] clauses, CompiledRollout rollout) {
+      this.clauses = clauses;
+      this.rollout = rollout;
+    }
+
+    boolean matchesUser(LDUser user) {
+      for (CompiledClause clause : clauses) {
+        if (!clause.matchesUser(user)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
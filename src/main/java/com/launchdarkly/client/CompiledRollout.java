@@ -0,0 +1,52 @@
+package com.launchdarkly.client;
+
+import java.util.List;
+
+/**
+ * A {@link VariationOrRollout} with its variation indices resolved against the flag's variation list and, for a
+ * percentage rollout, its weights turned into cumulative bucket thresholds. Instances are immutable.
+ */
+final class CompiledRollout {
+  private final CompiledFlag.Variation variation;
+  private final RolloutBucketer bucketer;
+  private final CompiledFlag.Variation[] rolloutVariations;
+  private final long[] thresholds;
+
+  CompiledRollout(VariationOrRollout vr, String key, String salt, CompiledFlag.Variation[] variations) {
+    this.variation = vr.getVariation() == null ? null : CompiledFlag.Variation.resolve(vr.getVariation(), variations);
+    VariationOrRollout.Rollout rollout = vr.getRollout();
+    List<VariationOrRollout.WeightedVariation> wvs = rollout == null ? null : rollout.getVariations();
+    int size = wvs == null ? 0 : wvs.size();
+    this.bucketer = rollout == null ? null : new RolloutBucketer(key, salt, rollout.getBucketBy());
+    this.rolloutVariations = new CompiledFlag.Variation[size];
+    this.thresholds = new long[size];
+    // Accumulate the weights exactly as evaluation used to, then find the matching integer thresholds
+    float sum = 0F;
+    for (int i = 0; i < size; i++) {
+      rolloutVariations[i] = CompiledFlag.Variation.resolve(wvs.get(i).getVariation(), variations);
+      sum += (float) wvs.get(i).getWeight() / 100000F;
+      thresholds[i] = RolloutBucketer.threshold(sum);
+    }
+  }
+
+  /**
+   * Returns the fixed variation if there is one, or null if this serves a percentage rollout.
+   */
+  CompiledFlag.Variation getFixedVariation() {
+    return variation;
+  }
+
+  CompiledFlag.Variation variationForUser(LDUser user, EvaluationContext context) {
+    if (variation != null) {
+      return variation;
+    } else if (bucketer != null) {
+      long bucket = bucketer.bucketValue(user, context);
+      for (int i = 0; i < thresholds.length; i++) {
+        if (bucket < thresholds[i]) {
+          return rolloutVariations[i];
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,194 @@
+package com.launchdarkly.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.gson.JsonElement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of evaluation results, keyed by user and flag key.
+ * <p>
+ * Each entry remembers the version of the flag it was computed from and of every flag it depends on through
+ * prerequisites. An entry is only used while the feature store still holds exactly those versions, so results
+ * stay correct across upserts, deletes and re-initialization without the store having to notify the cache.
+ */
+final class EvaluationCache {
+  // Recorded for a prerequisite that did not exist when the result was computed
+  private static final int ABSENT = -1;
+
+  private final Cache<Key, Entry> cache;
+  private final AtomicLong staleCount = new AtomicLong();
+
+  EvaluationCache(long maximumSize) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns the cached result of evaluating the flag for the user, or null if there is none or it is out of date.
+   */
+  Entry get(LDUser user, FeatureFlag flag, FeatureStore store) {
+    Key key = new Key(user, flag.getKey());
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return null;
+    }
+    if (!entry.isCurrent(flag, store)) {
+      staleCount.incrementAndGet();
+      cache.invalidate(key);
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Caches a result computed from the given flag. The prerequisite events recorded during the evaluation are
+   * kept so they can be sent again whenever the result is reused.
+   */
+  void put(LDUser user, FeatureFlag flag, FeatureStore store, CompiledFlag.Variation result, List<FeatureRequestEvent> prereqEvents) {
+    Map<String, Integer> dependencies = dependencyVersions(flag.getCompiled(), store);
+    String[] keys = new String[dependencies.size()];
+    int[] versions = new int[dependencies.size()];
+    int i = 0;
+    for (Map.Entry<String, Integer> dep : dependencies.entrySet()) {
+      keys[i] = dep.getKey();
+      versions[i] = dep.getValue();
+      i++;
+    }
+    List<PrerequisiteEvent> events = new ArrayList<>(prereqEvents == null ? 0 : prereqEvents.size());
+    if (prereqEvents != null) {
+      for (FeatureRequestEvent e : prereqEvents) {
+        events.add(new PrerequisiteEvent(e));
+      }
+    }
+    cache.put(new Key(user, flag.getKey()), new Entry(flag.getVersion(), keys, versions, result, events));
+  }
+
+  /**
+   * Returns the cache's statistics, with lookups that found an out of date entry counted as misses.
+   */
+  CacheStats stats() {
+    CacheStats stats = cache.stats();
+    long stale = Math.min(staleCount.get(), stats.hitCount());
+    return new CacheStats(stats.hitCount() - stale, stats.missCount() + stale, stats.loadSuccessCount(),
+        stats.loadExceptionCount(), stats.totalLoadTime(), stats.evictionCount());
+  }
+
+  // The current version of every flag reachable through prerequisites, including missing ones
+  private static Map<String, Integer> dependencyVersions(CompiledFlag flag, FeatureStore store) {
+    Map<String, Integer> versions = new LinkedHashMap<>();
+    Deque<CompiledFlag> pending = new ArrayDeque<>();
+    pending.push(flag);
+    while (!pending.isEmpty()) {
+      CompiledFlag current = pending.pop();
+      for (int i = 0; i < current.getPrerequisiteCount(); i++) {
+        String key = current.getPrerequisiteKey(i);
+        if (versions.containsKey(key)) {
+          continue;
+        }
+        FeatureFlag prereq = store.get(key);
+        versions.put(key, prereq == null ? ABSENT : prereq.getVersion());
+        if (prereq != null) {
+          pending.push(prereq.getCompiled());
+        }
+      }
+    }
+    return versions;
+  }
+
+  static final class Entry {
+    private final int version;
+    private final String[] dependencyKeys;
+    private final int[] dependencyVersions;
+    private final CompiledFlag.Variation result;
+    private final List<PrerequisiteEvent> prereqEvents;
+
+    Entry(int version, String[] dependencyKeys, int[] dependencyVersions, CompiledFlag.Variation result, List<PrerequisiteEvent> prereqEvents) {
+      this.version = version;
+      this.dependencyKeys = dependencyKeys;
+      this.dependencyVersions = dependencyVersions;
+      this.result = result;
+      this.prereqEvents = prereqEvents;
+    }
+
+    /**
+     * @return the cached variation, or null if evaluation selected no value
+     */
+    CompiledFlag.Variation getResult() {
+      return result;
+    }
+
+    /**
+     * Returns new copies of the prerequisite events that the original evaluation recorded.
+     */
+    List<FeatureRequestEvent> prerequisiteEvents(LDUser user) {
+      List<FeatureRequestEvent> events = new ArrayList<>(prereqEvents.size());
+      for (PrerequisiteEvent e : prereqEvents) {
+        events.add(new FeatureRequestEvent(e.key, user, e.value, null, e.version, e.prereqOf));
+      }
+      return events;
+    }
+
+    private boolean isCurrent(FeatureFlag flag, FeatureStore store) {
+      if (flag.getVersion() != version) {
+        return false;
+      }
+      for (int i = 0; i < dependencyKeys.length; i++) {
+        FeatureFlag dep = store.get(dependencyKeys[i]);
+        if ((dep == null ? ABSENT : dep.getVersion()) != dependencyVersions[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class PrerequisiteEvent {
+    private final String key;
+    private final JsonElement value;
+    private final Integer version;
+    private final String prereqOf;
+
+    PrerequisiteEvent(FeatureRequestEvent event) {
+      this.key = event.key;
+      this.value = event.value;
+      this.version = event.version;
+      this.prereqOf = event.prereqOf;
+    }
+  }
+
+  private static final class Key {
+    private final LDUser user;
+    private final String flagKey;
+    private final int hash;
+
+    Key(LDUser user, String flagKey) {
+      this.user = user;
+      this.flagKey = flagKey;
+      this.hash = 31 * user.hashCode() + flagKey.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return hash == other.hash && flagKey.equals(other.flagKey) && user.equals(other.user);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
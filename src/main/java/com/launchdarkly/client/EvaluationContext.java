@@ -0,0 +1,130 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluates feature flags for one user, remembering what it works out about the user along the way.
+ * <p>
+ * Use a context when handling a request that evaluates many flags for the same user. The user's key and
+ * secondary key are read once, and each percentage rollout bucket is hashed only once per flag and salt, no
+ * matter how many rules or evaluations use it. Results and analytics events are the same as those of the
+ * corresponding {@link LDClientInterface} methods.
+ * <p>
+ * A context is meant to be short-lived and used by one thread at a time. Obtain one with
+ * {@link LDClient#evaluationContext(LDUser)}.
+ */
+public final class EvaluationContext {
+  private final LDClient client;
+  private final LDUser user;
+  private final String userKey;
+  private final String secondary;
+  private Map<String, Long> buckets;
+
+  EvaluationContext(LDClient client, LDUser user) {
+    this.client = client;
+    this.user = user;
+    this.userKey = user == null || user.getKey() == null ? null : user.getKey().getAsString();
+    this.secondary = user == null || user.getSecondary() == null ? null : user.getSecondary().getAsString();
+  }
+
+  /**
+   * @return the user this context evaluates flags for
+   */
+  public LDUser getUser() {
+    return user;
+  }
+
+  /**
+   * Returns a map from feature flag keys to their values for this user.
+   *
+   * @return the flag values, or null under the same conditions as {@link LDClientInterface#allFlags(LDUser)}
+   * @see LDClientInterface#allFlags(LDUser)
+   */
+  public Map<String, JsonElement> allFlags() {
+    return client.allFlags(user, this);
+  }
+
+  /**
+   * Calculates the value of a feature flag for this context's user.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClientInterface#boolVariation(String, LDUser, boolean)
+   */
+  public boolean boolVariation(String featureKey, boolean defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(featureKey, null, user, this, VariationType.Boolean, defaultValue, 0);
+    return value == null ? defaultValue : value.booleanValue();
+  }
+
+  /**
+   * Calculates the integer value of a feature flag for this context's user.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClient#primitiveIntVariation(String, LDUser, int)
+   */
+  public int intVariation(String featureKey, int defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(featureKey, null, user, this, VariationType.Integer, null, defaultValue);
+    return value == null ? defaultValue : value.intValue();
+  }
+
+  /**
+   * Calculates the floating point numeric value of a feature flag for this context's user.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClient#primitiveDoubleVariation(String, LDUser, double)
+   */
+  public double doubleVariation(String featureKey, double defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(featureKey, null, user, this, VariationType.Double, null, defaultValue);
+    return value == null ? defaultValue : value.doubleValue();
+  }
+
+  /**
+   * Calculates the String value of a feature flag for this context's user.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClientInterface#stringVariation(String, LDUser, String)
+   */
+  public String stringVariation(String featureKey, String defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(featureKey, null, user, this, VariationType.String, defaultValue, 0);
+    return value == null ? defaultValue : value.stringValue();
+  }
+
+  /**
+   * Calculates the {@link JsonElement} value of a feature flag for this context's user.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClientInterface#jsonVariation(String, LDUser, JsonElement)
+   */
+  public JsonElement jsonVariation(String featureKey, JsonElement defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(featureKey, null, user, this, VariationType.Json, defaultValue, 0);
+    return value == null ? defaultValue : value.jsonValue();
+  }
+
+  String getUserKey() {
+    return userKey;
+  }
+
+  long bucketValue(RolloutBucketer bucketer) {
+    if (buckets == null) {
+      buckets = new HashMap<>();
+    }
+    Long bucket = buckets.get(bucketer.getContextKey());
+    if (bucket == null) {
+      bucket = bucketer.bucketValue(user, secondary);
+      buckets.put(bucketer.getContextKey(), bucket);
+    }
+    return bucket;
+  }
+}
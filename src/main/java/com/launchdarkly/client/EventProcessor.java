@@ -1,32 +1,46 @@
 package com.launchdarkly.client;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 class EventProcessor implements Closeable {
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
   private final ScheduledExecutorService scheduler;
-  private final Random random = new Random();
-  private final BlockingQueue<Event> queue;
+  private final EventQueue<Event> queue;
   private final String sdkKey;
   private final LDConfig config;
   private final Consumer consumer;
+  private final EventSummarizer summarizer;
 
   EventProcessor(String sdkKey, LDConfig config) {
     this.sdkKey = sdkKey;
-    this.queue = new ArrayBlockingQueue<>(config.capacity);
+    this.queue = new EventQueue<>(config.capacity);
+    this.summarizer = config.summarizeEvents ? new EventSummarizer(config.capacity) : null;
     this.consumer = new Consumer(config);
     this.config = config;
     ThreadFactory threadFactory = new ThreadFactoryBuilder()
@@ -38,13 +52,40 @@ class EventProcessor implements Closeable {
   }
 
   boolean sendEvent(Event e) {
-    if (config.samplingInterval > 0 && random.nextInt(config.samplingInterval) != 0) {
-      return true;
+    if (summarizer != null && e instanceof FeatureRequestEvent) {
+      // Every evaluation is counted; only the first one for each user in an interval adds anything to the queue
+      summarizer.summarize((FeatureRequestEvent) e);
+      return indexUser(e.user);
     }
 
     return queue.offer(e);
   }
 
+  /**
+   * Counts an evaluation of a flag that was found, without creating a feature event. Only valid when the
+   * configuration enables {@link LDConfig.Builder#summarizeEvents(boolean) summarizeEvents}.
+   */
+  boolean countEvaluation(String flagKey, LDUser user, int version, JsonElement value, JsonElement defaultVal) {
+    summarizer.countEvaluation(flagKey, version, value, defaultVal);
+    return indexUser(user);
+  }
+
+  /**
+   * Counts an evaluation that served the default value, without creating a feature event. Only valid when the
+   * configuration enables {@link LDConfig.Builder#summarizeEvents(boolean) summarizeEvents}.
+   */
+  boolean countDefault(String flagKey, LDUser user, JsonElement defaultVal) {
+    summarizer.countDefault(flagKey, defaultVal);
+    return indexUser(user);
+  }
+
+  private boolean indexUser(LDUser user) {
+    if (user == null || user.getKey() == null || !summarizer.noticeUser(user)) {
+      return true;
+    }
+    return queue.offer(new IndexEvent(user));
+  }
+
   @Override
   public void close() throws IOException {
     scheduler.shutdown();
@@ -70,28 +111,33 @@ class EventProcessor implements Closeable {
       flush();
     }
 
-    public void flush() {
+    public synchronized void flush() {
       List<Event> events = new ArrayList<>(queue.size());
       queue.drainTo(events);
+      if (summarizer != null) {
+        SummaryEvent summary = summarizer.flush();
+        if (summary != null) {
+          events.add(summary);
+        }
+      }
       if (!events.isEmpty() && !shutdown.get()) {
         postEvents(events);
       }
     }
 
     private void postEvents(List<Event> events) {
-
-      String json = config.gson.toJson(events);
-      logger.debug("Posting " + events.size() + " event(s) to " + config.eventsURI + " with payload: " + json);
-
-      String content = config.gson.toJson(events);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Posting " + events.size() + " event(s) to " + config.eventsURI + " with payload: " + config.gson.toJson(events));
+      }
 
       Request request = config.getRequestBuilder(sdkKey)
           .url(config.eventsURI.toString() + "/bulk")
-          .post(RequestBody.create(MediaType.parse("application/json; charset=utf-8"), content))
+          .post(new GzipEventsBody(config.gson, events))
           .addHeader("Content-Type", "application/json")
+          .addHeader("Content-Encoding", "gzip")
           .build();
 
-      logger.debug("Posting " + events.size() + " event(s) using request: " + request);
+      logger.debug("Posting {} event(s) using request: {}", events.size(), request);
 
       try (Response response = config.httpClient.newCall(request).execute()) {
         if (!response.isSuccessful()) {
@@ -109,4 +155,37 @@ class EventProcessor implements Closeable {
       }
     }
   }
+
+  /**
+   * Serializes the events straight into a gzip stream on the connection's sink, so a batch is never held in
+   * memory as a string. The body is written again from the same events if OkHttp retries the request.
+   */
+  static class GzipEventsBody extends RequestBody {
+    private final Gson gson;
+    private final List<Event> events;
+
+    GzipEventsBody(Gson gson, List<Event> events) {
+      this.gson = gson;
+      this.events = events;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+      return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      BufferedSink gzip = Okio.buffer(new GzipSink(sink));
+      JsonWriter writer = new JsonWriter(new OutputStreamWriter(gzip.outputStream(), UTF_8));
+      gson.toJson(events, events.getClass(), writer);
+      writer.flush();
+      gzip.close();
+    }
+  }
 }
@@ -0,0 +1,95 @@
+package com.launchdarkly.client;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer, used as the intake for analytics events.
+ * <p>
+ * Each slot carries a sequence number that tells producers and the consumer whose turn it is. A producer claims
+ * a slot with one compare-and-set on the tail counter and never waits for other producers; when the queue is
+ * full, {@link #offer} fails immediately instead of blocking. The slots are allocated in a power-of-two ring, but
+ * the queue never holds more than the requested capacity, which is limited to {@value #MAX_CAPACITY}.
+ * <p>
+ * {@link #drainTo} must only be called by one thread at a time.
+ */
+final class EventQueue<E> {
+  static final int MAX_CAPACITY = 1 << 30;
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<E> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head;
+
+  EventQueue(int capacity) {
+    this.capacity = Math.max(1, Math.min(capacity, MAX_CAPACITY));
+    int size = 1;
+    while (size < this.capacity) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an element, or returns false without waiting if the queue is full.
+   */
+  boolean offer(E e) {
+    while (true) {
+      long pos = tail.get();
+      if (pos - head >= capacity) {
+        return false;
+      }
+      int index = (int) pos & mask;
+      long available = sequences.get(index) - pos;
+      if (available == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          slots.lazySet(index, e);
+          // Publishes the element to the consumer
+          sequences.set(index, pos + 1);
+          return true;
+        }
+      } else if (available < 0) {
+        return false;
+      }
+      // Otherwise another producer claimed this slot first; retry with the new tail
+    }
+  }
+
+  /**
+   * Moves every published element into the list, in order, and returns how many were moved.
+   */
+  int drainTo(List<? super E> out) {
+    long pos = head;
+    int count = 0;
+    while (true) {
+      int index = (int) pos & mask;
+      if (sequences.get(index) != pos + 1) {
+        break;
+      }
+      out.add(slots.get(index));
+      slots.lazySet(index, null);
+      // Hands the slot back to producers for the next lap
+      sequences.set(index, pos + mask + 1);
+      pos++;
+      count++;
+    }
+    head = pos;
+    return count;
+  }
+
+  /**
+   * Returns an estimate of the number of queued elements.
+   */
+  int size() {
+    return (int) Math.max(0, Math.min(tail.get() - head, capacity));
+  }
+}
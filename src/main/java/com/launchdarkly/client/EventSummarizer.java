@@ -0,0 +1,202 @@
+package com.launchdarkly.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates feature evaluations into per-flag counters, and remembers which users have already been reported
+ * during the current flush interval. Counting an evaluation allocates nothing once its counter exists: counters
+ * are looked up with a per-thread probe key, so the memory used depends on the number of distinct flag values
+ * and users, not on the number of evaluations.
+ * <p>
+ * A flush takes each counter's count and leaves the counter in place. A counter that stayed at zero for a whole
+ * interval is retired by swapping in {@link #RETIRED} before it is removed, so an evaluating thread that still
+ * holds it sees that and counts into a fresh counter instead.
+ */
+final class EventSummarizer {
+  private static final long RETIRED = Long.MIN_VALUE;
+
+  private final ConcurrentMap<CounterKey, Counter> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, JsonElement> defaults = new ConcurrentHashMap<>();
+  private final Cache<String, Boolean> usersSeen;
+  private final ThreadLocal<CounterKey> probe = new ThreadLocal<CounterKey>() {
+    @Override
+    protected CounterKey initialValue() {
+      return new CounterKey();
+    }
+  };
+  private volatile long startDate = System.currentTimeMillis();
+
+  EventSummarizer(int userCapacity) {
+    this.usersSeen = CacheBuilder.newBuilder().maximumSize(Math.max(userCapacity, 1)).build();
+  }
+
+  void summarize(FeatureRequestEvent e) {
+    count(e.key, e.version != null, e.version == null ? 0 : e.version, e.value, e.prereqOf == null ? e.defaultVal : null);
+  }
+
+  /**
+   * Counts one evaluation of a flag that was found, without creating an event for it.
+   */
+  void countEvaluation(String flagKey, int version, JsonElement value, JsonElement defaultVal) {
+    count(flagKey, true, version, value, defaultVal);
+  }
+
+  /**
+   * Counts one evaluation that served the default value because the flag could not be evaluated.
+   */
+  void countDefault(String flagKey, JsonElement defaultVal) {
+    count(flagKey, false, 0, defaultVal, defaultVal);
+  }
+
+  private void count(String flagKey, boolean hasVersion, int version, JsonElement value, JsonElement defaultVal) {
+    if (value == null) {
+      value = JsonNull.INSTANCE;
+    }
+    CounterKey key = probe.get().set(flagKey, hasVersion, version, value);
+    while (true) {
+      Counter counter = counters.get(key);
+      if (counter == null) {
+        Counter created = new Counter();
+        counter = counters.putIfAbsent(new CounterKey().set(flagKey, hasVersion, version, value), created);
+        if (counter == null) {
+          counter = created;
+        }
+      }
+      if (counter.increment()) {
+        break;
+      }
+      // Retired by a flush after we looked it up; it is already gone or about to be
+      counters.remove(key, counter);
+    }
+    if (defaultVal != null) {
+      defaults.put(flagKey, defaultVal);
+    }
+  }
+
+  /**
+   * Returns true if this user has not been reported yet in the current flush interval. Once the interval has seen
+   * as many distinct users as the event capacity, the least recently seen ones are forgotten first.
+   */
+  boolean noticeUser(LDUser user) {
+    String key = user.getKeyAsString();
+    if (usersSeen.getIfPresent(key) != null) {
+      return false;
+    }
+    return usersSeen.asMap().putIfAbsent(key, Boolean.TRUE) == null;
+  }
+
+  /**
+   * Collects the counts accumulated since the last call and starts a new interval. Returns null if there
+   * were no evaluations.
+   */
+  SummaryEvent flush() {
+    long endDate = System.currentTimeMillis();
+    long start = startDate;
+    startDate = endDate;
+    usersSeen.invalidateAll();
+
+    Map<String, SummaryEvent.FlagSummary> features = new HashMap<>();
+    for (Map.Entry<CounterKey, Counter> entry : counters.entrySet()) {
+      long count = entry.getValue().take();
+      if (count == 0) {
+        // Idle for a whole interval, and now retired, so stop tracking it
+        counters.remove(entry.getKey(), entry.getValue());
+        continue;
+      }
+      CounterKey key = entry.getKey();
+      SummaryEvent.FlagSummary summary = features.get(key.flagKey);
+      if (summary == null) {
+        summary = new SummaryEvent.FlagSummary(defaults.get(key.flagKey), new ArrayList<SummaryEvent.Counter>());
+        features.put(key.flagKey, summary);
+      }
+      JsonElement value = key.value == JsonNull.INSTANCE ? null : key.value;
+      summary.counters.add(new SummaryEvent.Counter(value, key.hasVersion ? key.version : null, count));
+    }
+    if (features.isEmpty()) {
+      return null;
+    }
+    return new SummaryEvent(start, endDate, features);
+  }
+
+  private static final class Counter extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Adds one, unless the counter has been retired.
+     */
+    boolean increment() {
+      while (true) {
+        long n = get();
+        if (n == RETIRED) {
+          return false;
+        }
+        if (compareAndSet(n, n + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Returns the count and resets it to zero, or retires the counter and returns zero if nothing was counted.
+     */
+    long take() {
+      while (true) {
+        long n = get();
+        if (n == RETIRED) {
+          return 0;
+        }
+        if (n == 0 ? compareAndSet(0, RETIRED) : compareAndSet(n, 0)) {
+          return n;
+        }
+      }
+    }
+  }
+
+  /**
+   * Identifies a counter. Keys stored in the map are never modified; only the per-thread probe is reused.
+   */
+  private static final class CounterKey {
+    private String flagKey;
+    private boolean hasVersion;
+    private int version;
+    private JsonElement value;
+
+    CounterKey set(String flagKey, boolean hasVersion, int version, JsonElement value) {
+      this.flagKey = flagKey;
+      this.hasVersion = hasVersion;
+      this.version = version;
+      this.value = value;
+      return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CounterKey)) {
+        return false;
+      }
+      CounterKey other = (CounterKey) o;
+      return flagKey.equals(other.flagKey) && hasVersion == other.hasVersion && version == other.version
+          && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = flagKey.hashCode();
+      h = 31 * h + (hasVersion ? version : -1);
+      return 31 * h + value.hashCode();
+    }
+  }
+}
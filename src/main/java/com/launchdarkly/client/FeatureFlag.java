@@ -27,6 +27,7 @@ class FeatureFlag {
   private Integer offVariation; //optional
   private List<JsonElement> variations;
   private boolean deleted;
+  private transient volatile CompiledFlag compiled;
 
   static FeatureFlag fromJson(LDConfig config, String json) {
     return config.gson.fromJson(json, FeatureFlag.class);
@@ -61,99 +62,36 @@ class FeatureFlag {
       return new EvalResult(null, prereqEvents);
     }
 
-    if (isOn()) {
-      JsonElement value = evaluate(user, featureStore, prereqEvents);
-      if (value != null) {
-        return new EvalResult(value, prereqEvents);
-      }
-    }
-    JsonElement offVariation = getOffVariationValue();
-    return new EvalResult(offVariation, prereqEvents);
-  }
-
-  // Returning either a JsonElement or null indicating prereq failure/error.
-  private JsonElement evaluate(LDUser user, FeatureStore featureStore, List<FeatureRequestEvent> events) throws EvaluationException {
-    boolean prereqOk = true;
-    if (prerequisites != null) {
-      for (Prerequisite prereq : prerequisites) {
-        FeatureFlag prereqFeatureFlag = featureStore.get(prereq.getKey());
-        JsonElement prereqEvalResult = null;
-        if (prereqFeatureFlag == null) {
-          logger.error("Could not retrieve prerequisite flag: " + prereq.getKey() + " when evaluating: " + key);
-          return null;
-        } else if (prereqFeatureFlag.isOn()) {
-          prereqEvalResult = prereqFeatureFlag.evaluate(user, featureStore, events);
-          try {
-            JsonElement variation = prereqFeatureFlag.getVariation(prereq.getVariation());
-            if (prereqEvalResult == null || variation == null || !prereqEvalResult.equals(variation)) {
-              prereqOk = false;
-            }
-          } catch (EvaluationException err) {
-            logger.warn("Error evaluating prerequisites: " + err.getMessage());
-            prereqOk = false;
-          }
-        } else {
-          prereqOk = false;
-        }
-        //We don't short circuit and also send events for each prereq.
-        events.add(new FeatureRequestEvent(prereqFeatureFlag.getKey(), user, prereqEvalResult, null, prereqFeatureFlag.getVersion(), key));
-      }
-    }
-    if (prereqOk) {
-      return getVariation(evaluateIndex(user));
-    }
-    return null;
-  }
-
-  private Integer evaluateIndex(LDUser user) {
-    // Check to see if targets match
-    if (targets != null) {
-      for (Target target : targets) {
-        for (String v : target.getValues()) {
-          if (v.equals(user.getKey().getAsString())) {
-            return target.getVariation();
-          }
-        }
-      }
-    }
-    // Now walk through the rules and see if any match
-    if (rules != null) {
-      for (Rule rule : rules) {
-        if (rule.matchesUser(user)) {
-          return rule.variationIndexForUser(user, key, salt);
-        }
-      }
-    }
-    // Walk through the fallthrough and see if it matches
-    return fallthrough.variationIndexForUser(user, key, salt);
+    JsonElement value = getCompiled().evaluate(user, featureStore, prereqEvents);
+    return new EvalResult(value, prereqEvents);
   }
 
-  JsonElement getOffVariationValue() throws EvaluationException {
-    if (offVariation == null) {
-      return null;
-    }
+  /**
+   * Builds the pre-resolved evaluator for this flag. Feature stores call this once when a flag is stored or
+   * loaded, so that evaluations don't have to interpret the raw flag data.
+   */
+  void compile() {
+    compiled = new CompiledFlag(this);
+  }
 
-    if (offVariation >= variations.size()) {
-      throw new EvaluationException("Invalid off variation index");
+  CompiledFlag getCompiled() {
+    CompiledFlag c = compiled;
+    if (c == null) {
+      // Not every store compiles flags up front; compiling twice in a race is harmless.
+      c = new CompiledFlag(this);
+      compiled = c;
     }
-
-    return variations.get(offVariation);
+    return c;
   }
 
-  private JsonElement getVariation(Integer index) throws EvaluationException {
-    // If the supplied index is null, then rules didn't match, and we want to return
-    // the off variation
-    if (index == null) {
-      return null;
-    }
-    // If the index doesn't refer to a valid variation, that's an unexpected exception and we will
-    // return the default variation
-    else if (index >= variations.size()) {
-      throw new EvaluationException("Invalid index");
-    }
-    else {
-      return variations.get(index);
-    }
+  /**
+   * Returns a copy of this flag that uses the given evaluator, for example one whose prerequisites have been
+   * linked by the store. This flag is left unchanged, so snapshots that already hold it are unaffected.
+   */
+  FeatureFlag withCompiled(CompiledFlag compiled) {
+    FeatureFlag copy = new FeatureFlag(key, version, on, prerequisites, salt, targets, rules, fallthrough, offVariation, variations, deleted);
+    copy.compiled = compiled;
+    return copy;
   }
 
   int getVersion() {
@@ -0,0 +1,422 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts feature flags to and from the bytes a {@link RedisFeatureStore} keeps for them.
+ * <p>
+ * JSON data always starts with <code>{</code>. Binary data starts with a format byte, followed by the flag's
+ * version and deleted state, which are never compressed, so they can be read without decoding the rest. The
+ * remaining fields are written in a fixed order: lists as a count followed by their elements, with -1 for a
+ * missing list, and strings as a length followed by UTF-8 bytes, with -1 for a missing string.
+ */
+abstract class FeatureFlagCodec {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte FORMAT_BINARY = 1;
+  private static final byte FORMAT_COMPRESSED_BINARY = 2;
+
+  private static final byte TAG_MISSING = 0;
+  private static final byte TAG_NULL = 1;
+  private static final byte TAG_TRUE = 2;
+  private static final byte TAG_FALSE = 3;
+  private static final byte TAG_LONG = 4;
+  private static final byte TAG_NUMBER = 5;
+  private static final byte TAG_STRING = 6;
+  private static final byte TAG_ARRAY = 7;
+  private static final byte TAG_OBJECT = 8;
+
+  static final FeatureFlagCodec JSON = new FeatureFlagCodec() {
+    @Override
+    byte[] encode(FeatureFlag flag) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(bytes, UTF_8))) {
+        // As Gson.toJson does, so that null members of JSON values are left out in the same way
+        writer.setSerializeNulls(false);
+        FeatureFlagTypeAdapter.INSTANCE.write(writer, flag);
+      } catch (IOException e) {
+        // Not expected when writing to memory
+        throw new IllegalStateException(e);
+      }
+      return bytes.toByteArray();
+    }
+  };
+
+  static final FeatureFlagCodec BINARY = new BinaryCodec(false);
+
+  static final FeatureFlagCodec COMPRESSED_BINARY = new BinaryCodec(true);
+
+  static FeatureFlagCodec forEncoding(FeatureFlagEncoding encoding) {
+    if (encoding == null) {
+      return JSON;
+    }
+    switch (encoding) {
+      case BINARY:
+        return BINARY;
+      case COMPRESSED_BINARY:
+        return COMPRESSED_BINARY;
+      default:
+        return JSON;
+    }
+  }
+
+  abstract byte[] encode(FeatureFlag flag);
+
+  /**
+   * Decodes a flag written in any of the supported formats.
+   *
+   * @throws IllegalArgumentException if the data is not a valid flag
+   */
+  static FeatureFlag decode(byte[] data) {
+    try {
+      if (data.length > 0 && (data[0] == FORMAT_BINARY || data[0] == FORMAT_COMPRESSED_BINARY)) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+        int version = in.readInt();
+        boolean deleted = in.readBoolean();
+        if (data[0] == FORMAT_COMPRESSED_BINARY) {
+          in = new DataInputStream(new InflaterInputStream(in));
+        }
+        return readFlag(in, version, deleted);
+      }
+      return FeatureFlagTypeAdapter.INSTANCE.read(new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), UTF_8)));
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalArgumentException("Could not decode feature flag", e);
+    }
+  }
+
+  /**
+   * Returns the version of the flag in the data, reading as little of it as possible.
+   *
+   * @throws IllegalArgumentException if the data does not hold a flag with a version
+   */
+  static int readVersion(byte[] data) {
+    try {
+      if (data.length > 0 && (data[0] == FORMAT_BINARY || data[0] == FORMAT_COMPRESSED_BINARY)) {
+        return new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1)).readInt();
+      }
+      JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), UTF_8));
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("version") && reader.peek() == JsonToken.NUMBER) {
+          return reader.nextInt();
+        }
+        reader.skipValue();
+      }
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalArgumentException("Could not read feature flag version", e);
+    }
+    throw new IllegalArgumentException("Feature flag has no version");
+  }
+
+  private static final class BinaryCodec extends FeatureFlagCodec {
+    private final boolean compress;
+
+    BinaryCodec(boolean compress) {
+      this.compress = compress;
+    }
+
+    @Override
+    byte[] encode(FeatureFlag flag) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try {
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeByte(compress ? FORMAT_COMPRESSED_BINARY : FORMAT_BINARY);
+        header.writeInt(flag.getVersion());
+        header.writeBoolean(flag.isDeleted());
+        header.flush();
+        OutputStream body = compress ? new DeflaterOutputStream(bytes) : bytes;
+        DataOutputStream out = new DataOutputStream(body);
+        writeFlag(out, flag);
+        out.close();
+      } catch (IOException e) {
+        // Not expected when writing to memory
+        throw new IllegalStateException(e);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  private static void writeFlag(DataOutputStream out, FeatureFlag flag) throws IOException {
+    writeString(out, flag.getKey());
+    out.writeBoolean(flag.isOn());
+    List<Prerequisite> prerequisites = flag.getPrerequisites();
+    writeCount(out, prerequisites);
+    if (prerequisites != null) {
+      for (Prerequisite p : prerequisites) {
+        writeString(out, p.getKey());
+        out.writeInt(p.getVariation());
+      }
+    }
+    writeString(out, flag.getSalt());
+    List<Target> targets = flag.getTargets();
+    writeCount(out, targets);
+    if (targets != null) {
+      for (Target t : targets) {
+        writeCount(out, t.getValues());
+        if (t.getValues() != null) {
+          for (String value : t.getValues()) {
+            writeString(out, value);
+          }
+        }
+        out.writeInt(t.getVariation());
+      }
+    }
+    List<Rule> rules = flag.getRules();
+    writeCount(out, rules);
+    if (rules != null) {
+      for (Rule r : rules) {
+        writeCount(out, r.getClauses());
+        if (r.getClauses() != null) {
+          for (Clause c : r.getClauses()) {
+            writeString(out, c.getAttribute());
+            writeString(out, c.getOp() == null ? null : c.getOp().name());
+            writeCount(out, c.getValues());
+            if (c.getValues() != null) {
+              for (JsonPrimitive value : c.getValues()) {
+                writeElement(out, value);
+              }
+            }
+            out.writeBoolean(c.isNegate());
+          }
+        }
+        writeVariationOrRollout(out, r);
+      }
+    }
+    out.writeBoolean(flag.getFallthrough() != null);
+    if (flag.getFallthrough() != null) {
+      writeVariationOrRollout(out, flag.getFallthrough());
+    }
+    writeInteger(out, flag.getOffVariation());
+    List<JsonElement> variations = flag.getVariations();
+    writeCount(out, variations);
+    if (variations != null) {
+      for (JsonElement v : variations) {
+        writeElement(out, v);
+      }
+    }
+  }
+
+  private static FeatureFlag readFlag(DataInputStream in, int version, boolean deleted) throws IOException {
+    String key = readString(in);
+    boolean on = in.readBoolean();
+    int count = in.readInt();
+    List<Prerequisite> prerequisites = count < 0 ? null : new ArrayList<Prerequisite>(count);
+    for (int i = 0; i < count; i++) {
+      prerequisites.add(new Prerequisite(readString(in), in.readInt()));
+    }
+    String salt = readString(in);
+    count = in.readInt();
+    List<Target> targets = count < 0 ? null : new ArrayList<Target>(count);
+    for (int i = 0; i < count; i++) {
+      int valueCount = in.readInt();
+      List<String> values = valueCount < 0 ? null : new ArrayList<String>(valueCount);
+      for (int j = 0; j < valueCount; j++) {
+        values.add(readString(in));
+      }
+      targets.add(new Target(values, in.readInt()));
+    }
+    count = in.readInt();
+    List<Rule> rules = count < 0 ? null : new ArrayList<Rule>(count);
+    for (int i = 0; i < count; i++) {
+      int clauseCount = in.readInt();
+      List<Clause> clauses = clauseCount < 0 ? null : new ArrayList<Clause>(clauseCount);
+      for (int j = 0; j < clauseCount; j++) {
+        String attribute = readString(in);
+        String op = readString(in);
+        int valueCount = in.readInt();
+        List<JsonPrimitive> values = valueCount < 0 ? null : new ArrayList<JsonPrimitive>(valueCount);
+        for (int k = 0; k < valueCount; k++) {
+          JsonElement value = readElement(in);
+          values.add(value == null || value.isJsonNull() ? null : value.getAsJsonPrimitive());
+        }
+        clauses.add(new Clause(attribute, Operator.forName(op), values, in.readBoolean()));
+      }
+      VariationOrRollout vr = readVariationOrRollout(in);
+      rules.add(new Rule(clauses, vr.getVariation(), vr.getRollout()));
+    }
+    VariationOrRollout fallthrough = in.readBoolean() ? readVariationOrRollout(in) : null;
+    Integer offVariation = readInteger(in);
+    count = in.readInt();
+    List<JsonElement> variations = count < 0 ? null : new ArrayList<JsonElement>(count);
+    for (int i = 0; i < count; i++) {
+      variations.add(readElement(in));
+    }
+    return new FeatureFlag(key, version, on, prerequisites, salt, targets, rules, fallthrough, offVariation, variations, deleted);
+  }
+
+  private static void writeVariationOrRollout(DataOutputStream out, VariationOrRollout vr) throws IOException {
+    writeInteger(out, vr.getVariation());
+    VariationOrRollout.Rollout rollout = vr.getRollout();
+    out.writeBoolean(rollout != null);
+    if (rollout != null) {
+      writeCount(out, rollout.getVariations());
+      if (rollout.getVariations() != null) {
+        for (VariationOrRollout.WeightedVariation wv : rollout.getVariations()) {
+          out.writeInt(wv.getVariation());
+          out.writeInt(wv.getWeight());
+        }
+      }
+      writeString(out, rollout.getBucketBy());
+    }
+  }
+
+  private static VariationOrRollout readVariationOrRollout(DataInputStream in) throws IOException {
+    Integer variation = readInteger(in);
+    VariationOrRollout.Rollout rollout = null;
+    if (in.readBoolean()) {
+      int count = in.readInt();
+      List<VariationOrRollout.WeightedVariation> variations = count < 0 ? null :
+          new ArrayList<VariationOrRollout.WeightedVariation>(count);
+      for (int i = 0; i < count; i++) {
+        variations.add(new VariationOrRollout.WeightedVariation(in.readInt(), in.readInt()));
+      }
+      rollout = new VariationOrRollout.Rollout(variations, readString(in));
+    }
+    return new VariationOrRollout(variation, rollout);
+  }
+
+  private static void writeElement(DataOutputStream out, JsonElement element) throws IOException {
+    if (element == null) {
+      out.writeByte(TAG_MISSING);
+    } else if (element.isJsonNull()) {
+      out.writeByte(TAG_NULL);
+    } else if (element.isJsonPrimitive()) {
+      JsonPrimitive p = element.getAsJsonPrimitive();
+      if (p.isBoolean()) {
+        out.writeByte(p.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+      } else if (p.isNumber()) {
+        String number = p.getAsString();
+        Long integral = parseLong(number);
+        if (integral != null) {
+          out.writeByte(TAG_LONG);
+          out.writeLong(integral);
+        } else {
+          out.writeByte(TAG_NUMBER);
+          writeString(out, number);
+        }
+      } else {
+        out.writeByte(TAG_STRING);
+        writeString(out, p.getAsString());
+      }
+    } else if (element.isJsonArray()) {
+      out.writeByte(TAG_ARRAY);
+      out.writeInt(element.getAsJsonArray().size());
+      for (JsonElement item : element.getAsJsonArray()) {
+        writeElement(out, item);
+      }
+    } else {
+      out.writeByte(TAG_OBJECT);
+      out.writeInt(element.getAsJsonObject().entrySet().size());
+      for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        writeString(out, entry.getKey());
+        writeElement(out, entry.getValue());
+      }
+    }
+  }
+
+  private static JsonElement readElement(DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case TAG_MISSING:
+        return null;
+      case TAG_NULL:
+        return JsonNull.INSTANCE;
+      case TAG_TRUE:
+        return new JsonPrimitive(true);
+      case TAG_FALSE:
+        return new JsonPrimitive(false);
+      case TAG_LONG:
+        // BigDecimal, like the number type Gson parses, so that values compare and hash as they would from JSON
+        return new JsonPrimitive(BigDecimal.valueOf(in.readLong()));
+      case TAG_NUMBER:
+        return new JsonPrimitive(new BigDecimal(readString(in)));
+      case TAG_STRING:
+        return new JsonPrimitive(readString(in));
+      case TAG_ARRAY: {
+        int size = in.readInt();
+        JsonArray array = new JsonArray();
+        for (int i = 0; i < size; i++) {
+          array.add(readElement(in));
+        }
+        return array;
+      }
+      case TAG_OBJECT: {
+        int size = in.readInt();
+        JsonObject object = new JsonObject();
+        for (int i = 0; i < size; i++) {
+          String name = readString(in);
+          object.add(name, readElement(in));
+        }
+        return object;
+      }
+      default:
+        throw new IOException("Unknown value tag " + tag);
+    }
+  }
+
+  private static Long parseLong(String number) {
+    try {
+      return Long.parseLong(number);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static void writeCount(DataOutputStream out, List<?> list) throws IOException {
+    out.writeInt(list == null ? -1 : list.size());
+  }
+
+  private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeInt(value);
+    }
+  }
+
+  private static Integer readInteger(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readInt() : null;
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
@@ -0,0 +1,20 @@
+package com.launchdarkly.client;
+
+/**
+ * The format in which a {@link RedisFeatureStore} writes feature flags. Flags in any of these formats can be
+ * read regardless of the configured encoding, so the encoding can be changed one instance at a time.
+ */
+public enum FeatureFlagEncoding {
+  /**
+   * JSON, as written by earlier versions of the SDK. This is the default.
+   */
+  JSON,
+  /**
+   * A compact binary encoding. Older versions of the SDK cannot read flags written this way.
+   */
+  BINARY,
+  /**
+   * The binary encoding, compressed with DEFLATE. Worthwhile for large flags, at some CPU cost.
+   */
+  COMPRESSED_BINARY
+}
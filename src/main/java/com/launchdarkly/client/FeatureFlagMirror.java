@@ -0,0 +1,252 @@
+package com.launchdarkly.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete in-memory copy of the flags in a remote store, so reads never wait on the network.
+ * <p>
+ * Like {@link InMemoryFeatureStore}, the flags are held in an immutable snapshot published through a volatile
+ * reference. A background task refreshes it at a fixed interval: it reads only the stored versions, and then
+ * fetches just the flags whose version changed. Writes made through this instance are applied right away, so
+ * only changes made elsewhere can be up to one interval old.
+ * <p>
+ * As in {@link InMemoryFeatureStore}, a {@link PrerequisiteGraph} links each flag to its prerequisites within the
+ * snapshot, so evaluating a mirrored flag never looks its prerequisites up in Redis.
+ * <p>
+ * The stored versions can be wrong, for example when an older SDK writes a flag without recording its version,
+ * so every {@value #FULL_RELOAD_EVERY}th refresh reads all the flags in full. That bounds how long such a change
+ * goes unseen.
+ */
+class FeatureFlagMirror implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(FeatureFlagMirror.class);
+  static final int FULL_RELOAD_EVERY = 10;
+
+  /**
+   * Where the mirrored flags come from.
+   */
+  interface Source {
+    /**
+     * Returns the version of every stored flag, including deleted ones, or null if they are not all known
+     * without reading the flags themselves.
+     */
+    Map<String, Integer> versions();
+
+    /**
+     * Returns the stored flags with the given keys, including deleted ones. Keys that are no longer stored
+     * are left out.
+     */
+    Map<String, FeatureFlag> get(Collection<String> keys);
+
+    /**
+     * Returns every stored flag, including deleted ones.
+     */
+    Map<String, FeatureFlag> all();
+  }
+
+  private final Source source;
+  private final Object writeLock = new Object();
+  // Guarded by writeLock
+  private final PrerequisiteGraph prerequisites = new PrerequisiteGraph();
+  private volatile Snapshot snapshot;
+  private int refreshesSinceFullLoad;
+  private final ScheduledExecutorService scheduler;
+
+  FeatureFlagMirror(Source source) {
+    this.source = source;
+    this.scheduler = null;
+  }
+
+  FeatureFlagMirror(Source source, long refreshInterval, TimeUnit unit) {
+    this.source = source;
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("LaunchDarkly-FeatureFlagMirror-%d")
+        .build();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    this.scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refresh();
+        } catch (RuntimeException e) {
+          logger.warn("Could not refresh feature flags; keeping the last ones loaded", e);
+        }
+      }
+    }, 0, refreshInterval, unit);
+  }
+
+  /**
+   * Returns true once the flags have been loaded.
+   */
+  boolean isLoaded() {
+    return snapshot != null;
+  }
+
+  /**
+   * Returns the flag with the given key, or null if it is not stored or has been deleted.
+   *
+   * @throws IllegalStateException if the flags have not been loaded yet
+   */
+  FeatureFlag get(String key) {
+    FeatureFlag f = current().flags.get(key);
+    return f == null || f.isDeleted() ? null : f;
+  }
+
+  /**
+   * Returns the flags that have not been deleted, as an unmodifiable map.
+   *
+   * @throws IllegalStateException if the flags have not been loaded yet
+   */
+  Map<String, FeatureFlag> all() {
+    return current().live;
+  }
+
+  private Snapshot current() {
+    Snapshot s = snapshot;
+    if (s == null) {
+      throw new IllegalStateException("Feature flags have not been loaded yet");
+    }
+    return s;
+  }
+
+  /**
+   * Brings the copy up to date with the source, fetching only the flags whose version changed, or all of them
+   * if it is time for a full reload.
+   */
+  void refresh() {
+    synchronized (writeLock) {
+      Snapshot current = snapshot;
+      boolean fullLoad = current == null || ++refreshesSinceFullLoad >= FULL_RELOAD_EVERY;
+      Map<String, Integer> versions = fullLoad ? null : source.versions();
+      if (versions == null) {
+        load(source.all());
+        refreshesSinceFullLoad = 0;
+        return;
+      }
+      List<String> changed = new ArrayList<>();
+      for (Map.Entry<String, Integer> entry : versions.entrySet()) {
+        FeatureFlag f = current.flags.get(entry.getKey());
+        if (f == null || f.getVersion() != entry.getValue()) {
+          changed.add(entry.getKey());
+        }
+      }
+      boolean removed = !versions.keySet().containsAll(current.flags.keySet());
+      if (changed.isEmpty() && !removed) {
+        return;
+      }
+      Set<String> affected = new HashSet<>(changed);
+      for (String key : current.flags.keySet()) {
+        if (!versions.containsKey(key)) {
+          affected.add(key);
+        }
+      }
+      apply(current, affected, changed.isEmpty() ? Collections.<String, FeatureFlag>emptyMap() : source.get(changed));
+    }
+  }
+
+  /**
+   * Reloads just the given flags from the source, for keys that are known to have changed. Does nothing before
+   * the flags have been loaded.
+   */
+  void refresh(Collection<String> keys) {
+    synchronized (writeLock) {
+      Snapshot current = snapshot;
+      if (current == null) {
+        return;
+      }
+      apply(current, keys, source.get(keys));
+    }
+  }
+
+  /**
+   * Applies a flag, or a deleted placeholder, that was just written to the source, unless the copy already
+   * holds a newer version. Does nothing before the flags have been loaded.
+   */
+  void put(FeatureFlag flag) {
+    synchronized (writeLock) {
+      Snapshot current = snapshot;
+      if (current == null) {
+        return;
+      }
+      FeatureFlag old = current.flags.get(flag.getKey());
+      if (old == null || old.getVersion() < flag.getVersion()) {
+        apply(current, Collections.singleton(flag.getKey()), Collections.singletonMap(flag.getKey(), flag));
+      }
+    }
+  }
+
+  /**
+   * Replaces the copy with the full set of flags that was just written to the source.
+   */
+  void replace(Map<String, FeatureFlag> flags) {
+    synchronized (writeLock) {
+      load(flags);
+    }
+  }
+
+  // Must be called while holding writeLock
+  private void load(Map<String, FeatureFlag> loaded) {
+    Map<String, FeatureFlag> flags = new HashMap<>(loaded);
+    prerequisites.init(flags);
+    snapshot = new Snapshot(flags);
+  }
+
+  /**
+   * Publishes a copy of {@code current} in which each of {@code keys} holds the flag in {@code fetched}, or is
+   * removed if it has none, and relinks the flags that depend on them. Must be called while holding writeLock.
+   */
+  private void apply(Snapshot current, Collection<String> keys, Map<String, FeatureFlag> fetched) {
+    Map<String, FeatureFlag> flags = new HashMap<>(current.flags);
+    for (String key : keys) {
+      FeatureFlag flag = fetched.get(key);
+      if (flag == null) {
+        flags.remove(key);
+      } else {
+        flags.put(key, flag);
+      }
+    }
+    for (String key : keys) {
+      prerequisites.update(flags, key, current.flags.get(key));
+    }
+    snapshot = new Snapshot(flags);
+  }
+
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private static final class Snapshot {
+    final Map<String, FeatureFlag> flags;
+    final Map<String, FeatureFlag> live;
+
+    Snapshot(Map<String, FeatureFlag> flags) {
+      Map<String, FeatureFlag> live = new HashMap<>(flags.size());
+      for (Map.Entry<String, FeatureFlag> entry : flags.entrySet()) {
+        if (!entry.getValue().isDeleted()) {
+          live.put(entry.getKey(), entry.getValue());
+        }
+      }
+      this.flags = Collections.unmodifiableMap(flags);
+      this.live = Collections.unmodifiableMap(live);
+    }
+  }
+}
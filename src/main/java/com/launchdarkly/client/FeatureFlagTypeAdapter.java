@@ -0,0 +1,396 @@
+package com.launchdarkly.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes {@link FeatureFlag} JSON with hand-written streaming code instead of reflection. The JSON is
+ * the same as Gson's reflective serialization: null fields are omitted, unknown fields are ignored, and an
+ * unrecognized operator is read as null. The adapter is stateless, so one instance is shared.
+ */
+final class FeatureFlagTypeAdapter extends TypeAdapter<FeatureFlag> {
+  static final FeatureFlagTypeAdapter INSTANCE = new FeatureFlagTypeAdapter();
+
+  // Gson's JsonElement adapter works on the JSON tree directly and uses no reflection
+  private static final TypeAdapter<JsonElement> jsonElementAdapter = new Gson().getAdapter(JsonElement.class);
+
+  private FeatureFlagTypeAdapter() {
+  }
+
+  @Override
+  public void write(JsonWriter out, FeatureFlag flag) throws IOException {
+    if (flag == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    writeString(out, "key", flag.getKey());
+    out.name("version").value(flag.getVersion());
+    out.name("on").value(flag.isOn());
+    if (flag.getPrerequisites() != null) {
+      out.name("prerequisites").beginArray();
+      for (Prerequisite p : flag.getPrerequisites()) {
+        out.beginObject();
+        writeString(out, "key", p.getKey());
+        out.name("variation").value(p.getVariation());
+        out.endObject();
+      }
+      out.endArray();
+    }
+    writeString(out, "salt", flag.getSalt());
+    if (flag.getTargets() != null) {
+      out.name("targets").beginArray();
+      for (Target t : flag.getTargets()) {
+        out.beginObject();
+        if (t.getValues() != null) {
+          out.name("values").beginArray();
+          for (String value : t.getValues()) {
+            out.value(value);
+          }
+          out.endArray();
+        }
+        out.name("variation").value(t.getVariation());
+        out.endObject();
+      }
+      out.endArray();
+    }
+    if (flag.getRules() != null) {
+      out.name("rules").beginArray();
+      for (Rule r : flag.getRules()) {
+        out.beginObject();
+        if (r.getClauses() != null) {
+          out.name("clauses").beginArray();
+          for (Clause c : r.getClauses()) {
+            writeClause(out, c);
+          }
+          out.endArray();
+        }
+        writeVariationOrRolloutFields(out, r);
+        out.endObject();
+      }
+      out.endArray();
+    }
+    if (flag.getFallthrough() != null) {
+      out.name("fallthrough").beginObject();
+      writeVariationOrRolloutFields(out, flag.getFallthrough());
+      out.endObject();
+    }
+    if (flag.getOffVariation() != null) {
+      out.name("offVariation").value(flag.getOffVariation());
+    }
+    if (flag.getVariations() != null) {
+      out.name("variations").beginArray();
+      for (JsonElement v : flag.getVariations()) {
+        jsonElementAdapter.write(out, v);
+      }
+      out.endArray();
+    }
+    out.name("deleted").value(flag.isDeleted());
+    out.endObject();
+  }
+
+  private static void writeClause(JsonWriter out, Clause c) throws IOException {
+    out.beginObject();
+    writeString(out, "attribute", c.getAttribute());
+    if (c.getOp() != null) {
+      out.name("op").value(c.getOp().name());
+    }
+    if (c.getValues() != null) {
+      out.name("values").beginArray();
+      for (JsonPrimitive value : c.getValues()) {
+        jsonElementAdapter.write(out, value);
+      }
+      out.endArray();
+    }
+    out.name("negate").value(c.isNegate());
+    out.endObject();
+  }
+
+  private static void writeVariationOrRolloutFields(JsonWriter out, VariationOrRollout vr) throws IOException {
+    if (vr.getVariation() != null) {
+      out.name("variation").value(vr.getVariation());
+    }
+    VariationOrRollout.Rollout rollout = vr.getRollout();
+    if (rollout != null) {
+      out.name("rollout").beginObject();
+      if (rollout.getVariations() != null) {
+        out.name("variations").beginArray();
+        for (VariationOrRollout.WeightedVariation wv : rollout.getVariations()) {
+          out.beginObject();
+          out.name("variation").value(wv.getVariation());
+          out.name("weight").value(wv.getWeight());
+          out.endObject();
+        }
+        out.endArray();
+      }
+      writeString(out, "bucketBy", rollout.getBucketBy());
+      out.endObject();
+    }
+  }
+
+  private static void writeString(JsonWriter out, String name, String value) throws IOException {
+    if (value != null) {
+      out.name(name).value(value);
+    }
+  }
+
+  @Override
+  public FeatureFlag read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String key = null;
+    int version = 0;
+    boolean on = false;
+    List<Prerequisite> prerequisites = null;
+    String salt = null;
+    List<Target> targets = null;
+    List<Rule> rules = null;
+    VariationOrRollout fallthrough = null;
+    Integer offVariation = null;
+    List<JsonElement> variations = null;
+    boolean deleted = false;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "key":
+          key = in.nextString();
+          break;
+        case "version":
+          version = in.nextInt();
+          break;
+        case "on":
+          on = in.nextBoolean();
+          break;
+        case "prerequisites":
+          prerequisites = readPrerequisites(in);
+          break;
+        case "salt":
+          salt = in.nextString();
+          break;
+        case "targets":
+          targets = readTargets(in);
+          break;
+        case "rules":
+          rules = readRules(in);
+          break;
+        case "fallthrough":
+          fallthrough = readVariationOrRollout(in, false);
+          break;
+        case "offVariation":
+          offVariation = in.nextInt();
+          break;
+        case "variations":
+          variations = new ArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            variations.add(jsonElementAdapter.read(in));
+          }
+          in.endArray();
+          break;
+        case "deleted":
+          deleted = in.nextBoolean();
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new FeatureFlag(key, version, on, prerequisites, salt, targets, rules, fallthrough, offVariation, variations, deleted);
+  }
+
+  private static List<Prerequisite> readPrerequisites(JsonReader in) throws IOException {
+    List<Prerequisite> result = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      String key = null;
+      int variation = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+        } else if (name.equals("key")) {
+          key = in.nextString();
+        } else if (name.equals("variation")) {
+          variation = in.nextInt();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      result.add(new Prerequisite(key, variation));
+    }
+    in.endArray();
+    return result;
+  }
+
+  private static List<Target> readTargets(JsonReader in) throws IOException {
+    List<Target> result = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      List<String> values = null;
+      int variation = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+        } else if (name.equals("values")) {
+          values = readStrings(in);
+        } else if (name.equals("variation")) {
+          variation = in.nextInt();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      result.add(new Target(values, variation));
+    }
+    in.endArray();
+    return result;
+  }
+
+  private static List<Rule> readRules(JsonReader in) throws IOException {
+    List<Rule> result = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      result.add((Rule) readVariationOrRollout(in, true));
+    }
+    in.endArray();
+    return result;
+  }
+
+  private static VariationOrRollout readVariationOrRollout(JsonReader in, boolean rule) throws IOException {
+    List<Clause> clauses = null;
+    Integer variation = null;
+    VariationOrRollout.Rollout rollout = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+      } else if (name.equals("variation")) {
+        variation = in.nextInt();
+      } else if (name.equals("rollout")) {
+        rollout = readRollout(in);
+      } else if (rule && name.equals("clauses")) {
+        clauses = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+          clauses.add(readClause(in));
+        }
+        in.endArray();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return rule ? new Rule(clauses, variation, rollout) : new VariationOrRollout(variation, rollout);
+  }
+
+  private static VariationOrRollout.Rollout readRollout(JsonReader in) throws IOException {
+    List<VariationOrRollout.WeightedVariation> variations = null;
+    String bucketBy = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+      } else if (name.equals("variations")) {
+        variations = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+          int variation = 0;
+          int weight = 0;
+          in.beginObject();
+          while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+            } else if (field.equals("variation")) {
+              variation = in.nextInt();
+            } else if (field.equals("weight")) {
+              weight = in.nextInt();
+            } else {
+              in.skipValue();
+            }
+          }
+          in.endObject();
+          variations.add(new VariationOrRollout.WeightedVariation(variation, weight));
+        }
+        in.endArray();
+      } else if (name.equals("bucketBy")) {
+        bucketBy = in.nextString();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return new VariationOrRollout.Rollout(variations, bucketBy);
+  }
+
+  private static Clause readClause(JsonReader in) throws IOException {
+    String attribute = null;
+    Operator op = null;
+    List<JsonPrimitive> values = null;
+    boolean negate = false;
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+      } else if (name.equals("attribute")) {
+        attribute = in.nextString();
+      } else if (name.equals("op")) {
+        op = Operator.forName(in.nextString());
+      } else if (name.equals("values")) {
+        values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+          JsonElement value = jsonElementAdapter.read(in);
+          // Like Gson, a non-primitive value in a list of primitives is an error
+          values.add(value.isJsonNull() ? null : value.getAsJsonPrimitive());
+        }
+        in.endArray();
+      } else if (name.equals("negate")) {
+        negate = in.nextBoolean();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return new Clause(attribute, op, values, negate);
+  }
+
+  private static List<String> readStrings(JsonReader in) throws IOException {
+    List<String> result = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        result.add(null);
+      } else {
+        result.add(in.nextString());
+      }
+    }
+    in.endArray();
+    return result;
+  }
+}
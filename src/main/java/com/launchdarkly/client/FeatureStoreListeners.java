@@ -0,0 +1,35 @@
+package com.launchdarkly.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The listeners to call after a feature store changes. Listeners are called on the thread that made the change,
+ * and an exception thrown by one is logged without affecting the others.
+ */
+final class FeatureStoreListeners implements ObservableFeatureStore.Listener {
+  private static final Logger logger = LoggerFactory.getLogger(FeatureStoreListeners.class);
+
+  private final CopyOnWriteArrayList<ObservableFeatureStore.Listener> listeners = new CopyOnWriteArrayList<>();
+
+  void add(ObservableFeatureStore.Listener listener) {
+    listeners.addIfAbsent(listener);
+  }
+
+  void remove(ObservableFeatureStore.Listener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void storeChanged() {
+    for (ObservableFeatureStore.Listener listener : listeners) {
+      try {
+        listener.storeChanged();
+      } catch (RuntimeException e) {
+        logger.error("Unexpected exception in feature store listener", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A reusable reference to one feature flag, obtained from {@link LDClient#flagHandle(String)}.
+ * <p>
+ * Evaluating through a handle gives the same results and analytics events as the corresponding
+ * {@link LDClientInterface} variation method. When the client's feature store can report changes, as the
+ * default in-memory store does, the handle keeps the flag it looked up and only goes back to the store after
+ * the store's contents have changed. Handles are thread-safe and are meant to be created once and kept.
+ */
+public final class FlagHandle {
+  private final LDClient client;
+  private final String key;
+  private final ObservableFeatureStore observableStore;
+  private volatile Resolved resolved;
+
+  FlagHandle(LDClient client, String key, FeatureStore store) {
+    this.client = client;
+    this.key = key;
+    this.observableStore = InMemoryFeatureStore.observableOf(store);
+  }
+
+  /**
+   * @return the key of the feature flag this handle refers to
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Calculates the value of the feature flag for a given user.
+   *
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClientInterface#boolVariation(String, LDUser, boolean)
+   */
+  public boolean boolVariation(LDUser user, boolean defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(key, this, user, null, VariationType.Boolean, defaultValue, 0);
+    return value == null ? defaultValue : value.booleanValue();
+  }
+
+  /**
+   * Calculates the integer value of the feature flag for a given user.
+   *
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClient#primitiveIntVariation(String, LDUser, int)
+   */
+  public int intVariation(LDUser user, int defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(key, this, user, null, VariationType.Integer, null, defaultValue);
+    return value == null ? defaultValue : value.intValue();
+  }
+
+  /**
+   * Calculates the floating point numeric value of the feature flag for a given user.
+   *
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClient#primitiveDoubleVariation(String, LDUser, double)
+   */
+  public double doubleVariation(LDUser user, double defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(key, this, user, null, VariationType.Double, null, defaultValue);
+    return value == null ? defaultValue : value.doubleValue();
+  }
+
+  /**
+   * Calculates the String value of the feature flag for a given user.
+   *
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClientInterface#stringVariation(String, LDUser, String)
+   */
+  public String stringVariation(LDUser user, String defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(key, this, user, null, VariationType.String, defaultValue, 0);
+    return value == null ? defaultValue : value.stringValue();
+  }
+
+  /**
+   * Calculates the {@link JsonElement} value of the feature flag for a given user.
+   *
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   * @see LDClientInterface#jsonVariation(String, LDUser, JsonElement)
+   */
+  public JsonElement jsonVariation(LDUser user, JsonElement defaultValue) {
+    CompiledFlag.Variation value = client.evaluate(key, this, user, null, VariationType.Json, defaultValue, 0);
+    return value == null ? defaultValue : value.jsonValue();
+  }
+
+  /**
+   * Returns the flag as the store currently holds it, or null if it is unknown.
+   */
+  FeatureFlag getFlag(FeatureStore store) {
+    if (observableStore == null) {
+      return store.get(key);
+    }
+    // Read the generation first: if the store changes after this point, the next call sees a newer generation
+    long generation = observableStore.getGeneration();
+    Resolved r = resolved;
+    if (r != null && r.generation == generation) {
+      return r.flag;
+    }
+    FeatureFlag flag = store.get(key);
+    resolved = new Resolved(generation, flag);
+    return flag;
+  }
+
+  private static final class Resolved {
+    private final long generation;
+    private final FeatureFlag flag;
+
+    Resolved(long generation, FeatureFlag flag) {
+      this.generation = generation;
+      this.flag = flag;
+    }
+  }
+}
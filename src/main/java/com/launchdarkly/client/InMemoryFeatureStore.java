@@ -4,20 +4,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * A thread-safe, versioned store for {@link FeatureFlag} objects based on a
- * {@link HashMap}
+ * A thread-safe, versioned store for {@link FeatureFlag} objects.
+ * <p>
+ * The flags are held in an immutable snapshot published through a volatile reference. Readers never lock: they
+ * read whichever snapshot is current. Writers are serialized with each other, build a modified copy of the
+ * snapshot, and then publish it, so an update never blocks an evaluation in progress.
+ * <p>
+ * Copying means that each {@link #upsert} or {@link #delete} takes time in proportion to the number of flags,
+ * not just the one that changed. Single-flag updates arrive one at a time from the stream, so this is traded for
+ * snapshots that are plain {@link HashMap}s, which are the fastest to read during evaluation.
  */
 public class InMemoryFeatureStore implements FeatureStore {
   private static final Logger logger = LoggerFactory.getLogger(InMemoryFeatureStore.class);
 
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-  private final Map<String, FeatureFlag> features = new HashMap<>();
+  private final Object writeLock = new Object();
+  private volatile Map<String, FeatureFlag> features = Collections.emptyMap();
+  private final PrerequisiteGraph prerequisites = new PrerequisiteGraph();
   private volatile boolean initialized = false;
+  private volatile long generation = 0;
+  private final FeatureStoreListeners listeners = new FeatureStoreListeners();
+  private final ObservableFeatureStore observable = new Observable();
 
 
   /**
@@ -32,22 +43,19 @@ public class InMemoryFeatureStore implements FeatureStore {
    */
   @Override
   public FeatureFlag get(String key) {
-    try {
-      lock.readLock().lock();
-      FeatureFlag featureFlag = features.get(key);
-      if (featureFlag == null) {
-        logger.debug("[get] Key: " + key + " not found in feature store. Returning null");
-        return null;
-      }
-      if (featureFlag.isDeleted()) {
-        logger.debug("[get] Key: " + key + " has been deleted. Returning null");
-        return null;
-      }
-      logger.debug("[get] Key: " + key + " with version: " + featureFlag.getVersion() + " found in feature store.");
-      return featureFlag;
-    } finally {
-      lock.readLock().unlock();
+    FeatureFlag featureFlag = features.get(key);
+    if (featureFlag == null) {
+      logger.debug("[get] Key: {} not found in feature store. Returning null", key);
+      return null;
+    }
+    if (featureFlag.isDeleted()) {
+      logger.debug("[get] Key: {} has been deleted. Returning null", key);
+      return null;
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("[get] Key: {} with version: {} found in feature store.", key, featureFlag.getVersion());
     }
+    return featureFlag;
   }
 
   /**
@@ -57,37 +65,48 @@ public class InMemoryFeatureStore implements FeatureStore {
    */
   @Override
   public Map<String, FeatureFlag> all() {
-    try {
-      lock.readLock().lock();
-      Map<String, FeatureFlag> fs = new HashMap<>();
-
-      for (Map.Entry<String, FeatureFlag> entry : features.entrySet()) {
-        if (!entry.getValue().isDeleted()) {
-          fs.put(entry.getKey(), entry.getValue());
-        }
+    Map<String, FeatureFlag> fs = new HashMap<>();
+    for (Map.Entry<String, FeatureFlag> entry : features.entrySet()) {
+      if (!entry.getValue().isDeleted()) {
+        fs.put(entry.getKey(), entry.getValue());
       }
-      return fs;
-    } finally {
-      lock.readLock().unlock();
     }
+    return fs;
   }
 
 
   /**
    * Initializes (or re-initializes) the store with the specified set of features. Any existing entries
-   * will be removed.
+   * will be removed. Flags that are already stored with the same version are kept as they are, and if nothing
+   * changed the current snapshot stays in place.
    *
    * @param features the features to set the store
    */
   @Override
   public void init(Map<String, FeatureFlag> features) {
-    try {
-      lock.writeLock().lock();
-      this.features.clear();
-      this.features.putAll(features);
+    synchronized (writeLock) {
+      // Flags whose version hasn't changed keep their existing, already compiled instance
+      Map<String, FeatureFlag> current = this.features;
+      Map<String, FeatureFlag> snapshot = new HashMap<>(features.size());
+      boolean changed = current.size() != features.size();
+      for (Map.Entry<String, FeatureFlag> entry : features.entrySet()) {
+        FeatureFlag f = entry.getValue();
+        FeatureFlag existing = current.get(entry.getKey());
+        if (existing != null && existing.getVersion() == f.getVersion() && existing.isDeleted() == f.isDeleted()) {
+          snapshot.put(entry.getKey(), existing);
+        } else {
+          f.compile();
+          snapshot.put(entry.getKey(), f);
+          changed = true;
+        }
+      }
+      if (changed) {
+        prerequisites.init(snapshot);
+        this.features = Collections.unmodifiableMap(snapshot);
+        generation++;
+        listeners.storeChanged();
+      }
       initialized = true;
-    } finally {
-      lock.writeLock().unlock();
     }
   }
 
@@ -100,23 +119,20 @@ public class InMemoryFeatureStore implements FeatureStore {
    */
   @Override
   public void delete(String key, int version) {
-    try {
-      lock.writeLock().lock();
+    synchronized (writeLock) {
       FeatureFlag f = features.get(key);
       if (f != null && f.getVersion() < version) {
         FeatureFlagBuilder newBuilder = new FeatureFlagBuilder(f);
         newBuilder.deleted(true);
         newBuilder.version(version);
-        features.put(key, newBuilder.build());
+        publish(key, newBuilder.build(), f);
       } else if (f == null) {
         f = new FeatureFlagBuilder(key)
             .deleted(true)
             .version(version)
             .build();
-        features.put(key, f);
+        publish(key, f, null);
       }
-    } finally {
-      lock.writeLock().unlock();
     }
   }
 
@@ -129,15 +145,53 @@ public class InMemoryFeatureStore implements FeatureStore {
    */
   @Override
   public void upsert(String key, FeatureFlag feature) {
-    try {
-      lock.writeLock().lock();
+    synchronized (writeLock) {
       FeatureFlag old = features.get(key);
 
       if (old == null || old.getVersion() < feature.getVersion()) {
-        features.put(key, feature);
+        feature.compile();
+        publish(key, feature, old);
       }
-    } finally {
-      lock.writeLock().unlock();
+    }
+  }
+
+  // Must be called while holding writeLock
+  private void publish(String key, FeatureFlag feature, FeatureFlag old) {
+    Map<String, FeatureFlag> snapshot = new HashMap<>(features);
+    snapshot.put(key, feature);
+    prerequisites.update(snapshot, key, old);
+    features = Collections.unmodifiableMap(snapshot);
+    generation++;
+    // Still holding writeLock, so listeners see changes one at a time and in order
+    listeners.storeChanged();
+  }
+
+  /**
+   * Returns a view of the given store that reports its changes, or null if the store cannot do that.
+   */
+  static ObservableFeatureStore observableOf(FeatureStore store) {
+    return store instanceof InMemoryFeatureStore ? ((InMemoryFeatureStore) store).observable : null;
+  }
+
+  private final class Observable implements ObservableFeatureStore {
+    @Override
+    public long getGeneration() {
+      return generation;
+    }
+
+    @Override
+    public Map<String, FeatureFlag> snapshot() {
+      return features;
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+      listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+      listeners.remove(listener);
     }
   }
 
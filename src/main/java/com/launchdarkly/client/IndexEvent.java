@@ -0,0 +1,11 @@
+package com.launchdarkly.client;
+
+/**
+ * Carries the full user for a user whose evaluations are otherwise only counted in a {@link SummaryEvent}.
+ */
+class IndexEvent extends Event {
+
+  IndexEvent(LDUser user) {
+    super("index", null, user);
+  }
+}
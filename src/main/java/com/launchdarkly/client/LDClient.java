@@ -2,7 +2,9 @@ package com.launchdarkly.client;
 
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheStats;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonPrimitive;
 import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
@@ -15,10 +17,12 @@ import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.Attributes;
@@ -32,11 +36,17 @@ public class LDClient implements LDClientInterface {
   private static final Logger logger = LoggerFactory.getLogger(LDClient.class);
   private static final String HMAC_ALGORITHM = "HmacSHA256";
   static final String CLIENT_VERSION = getClientVersion();
+  private static final JsonPrimitive TRUE_VALUE = new JsonPrimitive(true);
+  private static final JsonPrimitive FALSE_VALUE = new JsonPrimitive(false);
 
   private final LDConfig config;
   private final String sdkKey;
   private final FeatureRequestor requestor;
   private final EventProcessor eventProcessor;
+  private final EvaluationCache evaluationCache;
+  private final AllFlagsEvaluator allFlagsEvaluator;
+  // Told about every write the update processor makes, for stores that do not report changes themselves
+  private final FeatureStoreListeners storeUpdates = new FeatureStoreListeners();
   private UpdateProcessor updateProcessor;
 
   private final AtomicBoolean eventCapacityExceeded = new AtomicBoolean(false);
@@ -63,6 +73,8 @@ public class LDClient implements LDClientInterface {
     this.sdkKey = sdkKey;
     this.requestor = createFeatureRequestor(sdkKey, config);
     this.eventProcessor = createEventProcessor(sdkKey, config);
+    this.evaluationCache = config.evaluationCacheSize > 0 ? new EvaluationCache(config.evaluationCacheSize) : null;
+    this.allFlagsEvaluator = new AllFlagsEvaluator(config.featureStore);
 
     if (config.offline) {
       logger.info("Starting LaunchDarkly client in offline mode");
@@ -113,12 +125,12 @@ public class LDClient implements LDClientInterface {
 
   @VisibleForTesting
   protected StreamProcessor createStreamProcessor(String sdkKey, LDConfig config, FeatureRequestor requestor) {
-    return new StreamProcessor(sdkKey, config, requestor);
+    return new StreamProcessor(sdkKey, config, requestor, storeUpdates);
   }
 
   @VisibleForTesting
   protected PollingProcessor createPollingProcessor(LDConfig config) {
-    return new PollingProcessor(config, requestor);
+    return new PollingProcessor(config, requestor, storeUpdates);
   }
 
 
@@ -137,7 +149,9 @@ public class LDClient implements LDClientInterface {
     if (user == null || user.getKey() == null) {
       logger.warn("Track called with null user or null user key!");
     }
-    sendEvent(new CustomEvent(eventName, user, data));
+    if (isSampled()) {
+      sendEvent(new CustomEvent(eventName, user, data));
+    }
   }
 
   /**
@@ -164,27 +178,59 @@ public class LDClient implements LDClientInterface {
     if (user == null || user.getKey() == null) {
       logger.warn("Identify called with null user or null user key!");
     }
-    sendEvent(new IdentifyEvent(user));
+    if (isSampled()) {
+      sendEvent(new IdentifyEvent(user));
+    }
+  }
+
+  /**
+   * Records an evaluation. Summarized evaluations are counted directly, without creating an event.
+   */
+  private void sendFlagRequestEvent(String featureKey, LDUser user, JsonElement value, JsonElement defaultValue, int version) {
+    if (!config.summarizeEvents) {
+      sendEvent(new FeatureRequestEvent(featureKey, user, value, defaultValue, version, null));
+    } else if (eventsEnabled()) {
+      noteQueued(eventProcessor.countEvaluation(featureKey, user, version, value, defaultValue));
+    }
+  }
+
+  private boolean eventsEnabled() {
+    return !isOffline() && config.sendEvents;
+  }
+
+  /**
+   * Decides whether an event should be sent at all, before anything is allocated for it.
+   */
+  private boolean isSampled() {
+    return config.samplingInterval <= 0 || ThreadLocalRandom.current().nextInt(config.samplingInterval) == 0;
+  }
+
+  private boolean shouldRecordFeatureEvents() {
+    // Summarized evaluations are only counted, so there is no reason to sample them
+    return eventsEnabled() && (config.summarizeEvents || isSampled());
   }
 
-  private void sendFlagRequestEvent(String featureKey, LDUser user, JsonElement value, JsonElement defaultValue, Integer version) {
-    if (sendEvent(new FeatureRequestEvent(featureKey, user, value, defaultValue, version, null))) {
+  private static void annotateTransaction(String featureKey, JsonElement value) {
+    if (NewRelicReflector.isEnabled()) {
       NewRelicReflector.annotateTransaction(featureKey, String.valueOf(value));
     }
   }
 
   private boolean sendEvent(Event event) {
-    if (isOffline() || !config.sendEvents) {
+    if (!eventsEnabled()) {
       return false;
     }
-  
-    boolean processed = eventProcessor.sendEvent(event);
+
+    noteQueued(eventProcessor.sendEvent(event));
+    return true;
+  }
+
+  private void noteQueued(boolean processed) {
     if (processed) {
       eventCapacityExceeded.compareAndSet(true, false);
     } else if (eventCapacityExceeded.compareAndSet(false, true)) {
       logger.warn("Exceeded event queue capacity. Increase capacity to avoid dropping events.");
     }
-    return true;
   }
 
   /**
@@ -200,6 +246,10 @@ public class LDClient implements LDClientInterface {
    */
   @Override
   public Map<String, JsonElement> allFlags(LDUser user) {
+    return allFlags(user, new EvaluationContext(this, user));
+  }
+
+  Map<String, JsonElement> allFlags(LDUser user, EvaluationContext context) {
     if (isOffline()) {
       logger.debug("allFlags() was called when client is in offline mode.");
     }
@@ -218,19 +268,7 @@ public class LDClient implements LDClientInterface {
       return null;
     }
 
-    Map<String, FeatureFlag> flags = this.config.featureStore.all();
-    Map<String, JsonElement> result = new HashMap<>();
-
-    for (Map.Entry<String, FeatureFlag> entry : flags.entrySet()) {
-      try {
-        JsonElement evalResult = entry.getValue().evaluate(user, config.featureStore).getValue();
-          result.put(entry.getKey(), evalResult);
-
-      } catch (EvaluationException e) {
-        logger.error("Exception caught when evaluating all flags:", e);
-      }
-    }
-    return result;
+    return allFlagsEvaluator.evaluate(user, context);
   }
 
   /**
@@ -243,8 +281,8 @@ public class LDClient implements LDClientInterface {
    */
   @Override
   public boolean boolVariation(String featureKey, LDUser user, boolean defaultValue) {
-    JsonElement value = evaluate(featureKey, user, new JsonPrimitive(defaultValue), VariationType.Boolean);
-    return value.getAsJsonPrimitive().getAsBoolean();
+    CompiledFlag.Variation value = evaluate(featureKey, null, user, null, VariationType.Boolean, defaultValue, 0);
+    return value == null ? defaultValue : value.booleanValue();
   }
 
   /**
@@ -267,8 +305,7 @@ public class LDClient implements LDClientInterface {
    */
   @Override
   public Integer intVariation(String featureKey, LDUser user, int defaultValue) {
-    JsonElement value = evaluate(featureKey, user, new JsonPrimitive(defaultValue), VariationType.Integer);
-    return value.getAsJsonPrimitive().getAsInt();
+    return primitiveIntVariation(featureKey, user, defaultValue);
   }
 
   /**
@@ -281,8 +318,35 @@ public class LDClient implements LDClientInterface {
    */
   @Override
   public Double doubleVariation(String featureKey, LDUser user, Double defaultValue) {
-    JsonElement value = evaluate(featureKey, user, new JsonPrimitive(defaultValue), VariationType.Double);
-    return value.getAsJsonPrimitive().getAsDouble();
+    return primitiveDoubleVariation(featureKey, user, defaultValue);
+  }
+
+  /**
+   * Calculates the integer value of a feature flag for a given user. Unlike {@link #intVariation}, the
+   * result is not boxed, and a successful evaluation allocates nothing in the caller.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   */
+  public int primitiveIntVariation(String featureKey, LDUser user, int defaultValue) {
+    CompiledFlag.Variation value = evaluate(featureKey, null, user, null, VariationType.Integer, null, defaultValue);
+    return value == null ? defaultValue : value.intValue();
+  }
+
+  /**
+   * Calculates the floating point numeric value of a feature flag for a given user. Unlike
+   * {@link #doubleVariation}, the result is not boxed, and a successful evaluation allocates nothing in the caller.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param user         the end user requesting the flag
+   * @param defaultValue the default value of the flag
+   * @return the variation for the given user, or {@code defaultValue} if the flag is disabled in the LaunchDarkly control panel
+   */
+  public double primitiveDoubleVariation(String featureKey, LDUser user, double defaultValue) {
+    CompiledFlag.Variation value = evaluate(featureKey, null, user, null, VariationType.Double, null, defaultValue);
+    return value == null ? defaultValue : value.doubleValue();
   }
 
   /**
@@ -295,8 +359,8 @@ public class LDClient implements LDClientInterface {
    */
   @Override
   public String stringVariation(String featureKey, LDUser user, String defaultValue) {
-    JsonElement value = evaluate(featureKey, user, new JsonPrimitive(defaultValue), VariationType.String);
-    return value.getAsJsonPrimitive().getAsString();
+    CompiledFlag.Variation value = evaluate(featureKey, null, user, null, VariationType.String, defaultValue, 0);
+    return value == null ? defaultValue : value.stringValue();
   }
 
   /**
@@ -309,8 +373,123 @@ public class LDClient implements LDClientInterface {
    */
   @Override
   public JsonElement jsonVariation(String featureKey, LDUser user, JsonElement defaultValue) {
-    JsonElement value = evaluate(featureKey, user, defaultValue, VariationType.Json);
-    return value;
+    CompiledFlag.Variation value = evaluate(featureKey, null, user, null, VariationType.Json, defaultValue, 0);
+    return value == null ? defaultValue : value.jsonValue();
+  }
+
+  /**
+   * Returns a reusable handle for evaluating one feature flag. Evaluating through the handle skips looking the
+   * flag up in the feature store for as long as the store's contents have not changed.
+   *
+   * @param featureKey the unique featureKey for the feature flag
+   * @return a handle for the flag; the flag does not have to exist yet
+   */
+  public FlagHandle flagHandle(String featureKey) {
+    return new FlagHandle(this, featureKey, config.featureStore);
+  }
+
+  /**
+   * Returns a context for evaluating several feature flags for the same user, such as while handling one
+   * request. The context reuses work that would otherwise be repeated for every flag.
+   *
+   * @param user the end user requesting the flags
+   * @return a context bound to the user
+   */
+  public EvaluationContext evaluationContext(LDUser user) {
+    return new EvaluationContext(this, user);
+  }
+
+  /**
+   * Binds a user-independent boolean feature flag, whose value is then kept up to date as flag changes arrive.
+   * Reading a bound flag does not evaluate it and records no analytics events. With a feature store that does not
+   * report changes, such as {@link RedisFeatureStore}, the flag follows the changes this client receives, and
+   * cannot be bound in offline or LDD mode.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the value to use while the flag has no usable value
+   * @return the bound flag
+   * @throws IllegalArgumentException if the flag is unknown or its value can depend on the user
+   * @throws IllegalStateException if the flag could not be kept up to date
+   * @see BoundFlag
+   */
+  public BoundFlag<Boolean> bindBoolFlag(String featureKey, boolean defaultValue) {
+    return BoundFlag.bind(featureKey, VariationType.Boolean, defaultValue, config.featureStore, boundFlagUpdates());
+  }
+
+  /**
+   * Binds a user-independent integer feature flag, whose value is then kept up to date as flag changes arrive.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the value to use while the flag has no usable value
+   * @return the bound flag
+   * @throws IllegalArgumentException if the flag is unknown or its value can depend on the user
+   * @throws IllegalStateException if the flag could not be kept up to date
+   * @see BoundFlag
+   */
+  public BoundFlag<Integer> bindIntFlag(String featureKey, int defaultValue) {
+    return BoundFlag.bind(featureKey, VariationType.Integer, defaultValue, config.featureStore, boundFlagUpdates());
+  }
+
+  /**
+   * Binds a user-independent floating point feature flag, whose value is then kept up to date as flag changes
+   * arrive.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the value to use while the flag has no usable value
+   * @return the bound flag
+   * @throws IllegalArgumentException if the flag is unknown or its value can depend on the user
+   * @throws IllegalStateException if the flag could not be kept up to date
+   * @see BoundFlag
+   */
+  public BoundFlag<Double> bindDoubleFlag(String featureKey, double defaultValue) {
+    return BoundFlag.bind(featureKey, VariationType.Double, defaultValue, config.featureStore, boundFlagUpdates());
+  }
+
+  /**
+   * Binds a user-independent String feature flag, whose value is then kept up to date as flag changes arrive.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the value to use while the flag has no usable value
+   * @return the bound flag
+   * @throws IllegalArgumentException if the flag is unknown or its value can depend on the user
+   * @throws IllegalStateException if the flag could not be kept up to date
+   * @see BoundFlag
+   */
+  public BoundFlag<String> bindStringFlag(String featureKey, String defaultValue) {
+    return BoundFlag.bind(featureKey, VariationType.String, defaultValue, config.featureStore, boundFlagUpdates());
+  }
+
+  /**
+   * Binds a user-independent {@link JsonElement} feature flag, whose value is then kept up to date as flag
+   * changes arrive.
+   *
+   * @param featureKey   the unique featureKey for the feature flag
+   * @param defaultValue the value to use while the flag has no usable value
+   * @return the bound flag
+   * @throws IllegalArgumentException if the flag is unknown or its value can depend on the user
+   * @throws IllegalStateException if the flag could not be kept up to date
+   * @see BoundFlag
+   */
+  public BoundFlag<JsonElement> bindJsonFlag(String featureKey, JsonElement defaultValue) {
+    return BoundFlag.bind(featureKey, VariationType.Json, defaultValue, config.featureStore, boundFlagUpdates());
+  }
+
+  /**
+   * Returns what tells bound flags about changes to a store that does not report them itself, or null if nothing
+   * writes to the store through this client.
+   */
+  private FeatureStoreListeners boundFlagUpdates() {
+    return updateProcessor == null ? null : storeUpdates;
+  }
+
+  /**
+   * Returns statistics for the evaluation result cache, which can be used to choose its size.
+   *
+   * @return the cache statistics, or null if the cache is not enabled
+   * @see LDConfig.Builder#evaluationCacheSize(long)
+   */
+  public CacheStats getEvaluationCacheStats() {
+    return evaluationCache == null ? null : evaluationCache.stats();
   }
 
   @Override
@@ -335,11 +514,20 @@ public class LDClient implements LDClientInterface {
     return false;
   }
 
-  private JsonElement evaluate(String featureKey, LDUser user, JsonElement defaultValue, VariationType expectedType) {
+  /**
+   * Evaluates a flag and records the analytics events. A handle, if given, supplies the flag instead of the store, and a
+   * context, if given, is used to reuse work across evaluations for the same user. Returns the selected variation,
+   * already checked against the expected type, or null if the default value should be served.
+   * <p>
+   * The default is passed as {@code numericDefault} for numeric types and as {@code defaultValue} otherwise, and
+   * is only turned into a {@link JsonElement} when an event needs it.
+   */
+  CompiledFlag.Variation evaluate(String featureKey, FlagHandle handle, LDUser user, EvaluationContext context, VariationType expectedType, Object defaultValue, double numericDefault) {
+    boolean recordEvents = shouldRecordFeatureEvents();
     if (user == null || user.getKey() == null) {
       logger.warn("Null user or null user key when evaluating flag: " + featureKey + "; returning default value");
-      sendFlagRequestEvent(featureKey, user, defaultValue, defaultValue, null);
-      return defaultValue;
+      sendDefaultFlagRequestEvent(recordEvents, featureKey, user, expectedType, defaultValue, numericDefault);
+      return null;
     }
     if (user.getKeyAsString().isEmpty()) {
       logger.warn("User key is blank. Flag evaluation will proceed, but the user will not be stored in LaunchDarkly");
@@ -349,32 +537,87 @@ public class LDClient implements LDClientInterface {
         logger.warn("Evaluation called before client initialized for feature flag " + featureKey + "; using last known values from feature store");
       } else {
         logger.warn("Evaluation called before client initialized for feature flag " + featureKey + "; feature store unavailable, returning default value");
-        sendFlagRequestEvent(featureKey, user, defaultValue, defaultValue, null);
-        return defaultValue;
+        sendDefaultFlagRequestEvent(recordEvents, featureKey, user, expectedType, defaultValue, numericDefault);
+        return null;
       }
     }
 
     try {
-      FeatureFlag featureFlag = config.featureStore.get(featureKey);
+      FeatureFlag featureFlag = handle == null ? config.featureStore.get(featureKey) : handle.getFlag(config.featureStore);
       if (featureFlag == null) {
         logger.warn("Unknown feature flag " + featureKey + "; returning default value");
-        sendFlagRequestEvent(featureKey, user, defaultValue, defaultValue, null);
-        return defaultValue;
+        sendDefaultFlagRequestEvent(recordEvents, featureKey, user, expectedType, defaultValue, numericDefault);
+        return null;
+      }
+      CompiledFlag compiled = featureFlag.getCompiled();
+      EvaluationCache.Entry cached = evaluationCache == null ? null : evaluationCache.get(user, featureFlag, config.featureStore);
+      CompiledFlag.Variation result;
+      List<FeatureRequestEvent> prereqEvents;
+      if (cached != null) {
+        result = cached.getResult();
+        prereqEvents = recordEvents ? cached.prerequisiteEvents(user) : null;
+      } else {
+        // Prerequisite events are only collected when they will be sent or cached
+        prereqEvents = (recordEvents || evaluationCache != null) && compiled.getPrerequisiteCount() > 0 ?
+            new ArrayList<FeatureRequestEvent>() : null;
+        result = compiled.evaluateVariation(user, context, config.featureStore, prereqEvents);
+        if (evaluationCache != null) {
+          evaluationCache.put(user, featureFlag, config.featureStore, result, prereqEvents);
+        }
+        if (!recordEvents) {
+          prereqEvents = null;
+        }
       }
-      FeatureFlag.EvalResult evalResult = featureFlag.evaluate(user, config.featureStore);
-      for (FeatureRequestEvent event : evalResult.getPrerequisiteEvents()) {
-        sendEvent(event);
+      if (prereqEvents != null) {
+        for (FeatureRequestEvent event : prereqEvents) {
+          sendEvent(event);
+        }
       }
-      if (evalResult.getValue() != null) {
-        expectedType.assertResultType(evalResult.getValue());
-        sendFlagRequestEvent(featureKey, user, evalResult.getValue(), defaultValue, featureFlag.getVersion());
-        return evalResult.getValue();
+      if (result != null) {
+        expectedType.assertResultType(result.jsonValue());
+        if (recordEvents) {
+          sendFlagRequestEvent(featureKey, user, result.jsonValue(), defaultJson(expectedType, defaultValue, numericDefault), featureFlag.getVersion());
+        }
+        if (eventsEnabled()) {
+          annotateTransaction(featureKey, result.jsonValue());
+        }
+        return result;
       }
     } catch (Exception e) {
       logger.error("Encountered exception in LaunchDarkly client", e);
     }
-    sendFlagRequestEvent(featureKey, user, defaultValue, defaultValue, null);
-    return defaultValue;
+    sendDefaultFlagRequestEvent(recordEvents, featureKey, user, expectedType, defaultValue, numericDefault);
+    return null;
+  }
+
+  private void sendDefaultFlagRequestEvent(boolean recordEvents, String featureKey, LDUser user, VariationType expectedType, Object defaultValue, double numericDefault) {
+    if (!eventsEnabled()) {
+      return;
+    }
+    JsonElement value = defaultJson(expectedType, defaultValue, numericDefault);
+    if (recordEvents) {
+      if (config.summarizeEvents) {
+        noteQueued(eventProcessor.countDefault(featureKey, user, value));
+      } else {
+        sendEvent(new FeatureRequestEvent(featureKey, user, value, value, null, null));
+      }
+    }
+    annotateTransaction(featureKey, value);
+  }
+
+  private static JsonElement defaultJson(VariationType expectedType, Object defaultValue, double numericDefault) {
+    switch (expectedType) {
+      case Boolean:
+        return (Boolean) defaultValue ? TRUE_VALUE : FALSE_VALUE;
+      case Integer:
+        return new JsonPrimitive((int) numericDefault);
+      case Double:
+        return new JsonPrimitive(numericDefault);
+      case String:
+        return defaultValue == null ? JsonNull.INSTANCE : new JsonPrimitive((String) defaultValue);
+      default:
+        return (JsonElement) defaultValue;
+    }
   }
 
   /**
@@ -387,6 +630,7 @@ public class LDClient implements LDClientInterface {
   public void close() throws IOException {
     logger.info("Closing LaunchDarkly Client");
     this.eventProcessor.close();
+    this.allFlagsEvaluator.close();
     if (this.updateProcessor != null) {
       this.updateProcessor.close();
     }
@@ -29,7 +29,10 @@ import java.util.concurrent.TimeUnit;
  */
 public final class LDConfig {
   private static final Logger logger = LoggerFactory.getLogger(LDConfig.class);
-  final Gson gson = new GsonBuilder().registerTypeAdapter(LDUser.class, new LDUser.UserAdapter(this)).create();
+  final Gson gson = new GsonBuilder()
+      .registerTypeAdapter(LDUser.class, new LDUser.UserAdapter(this))
+      .registerTypeAdapter(FeatureFlag.class, FeatureFlagTypeAdapter.INSTANCE)
+      .create();
 
   private static final URI DEFAULT_BASE_URI = URI.create("https://app.launchdarkly.com");
   private static final URI DEFAULT_EVENTS_URI = URI.create("https://events.launchdarkly.com");
@@ -67,6 +70,8 @@ public final class LDConfig {
   final long pollingIntervalMillis;
   final long startWaitMillis;
   final int samplingInterval;
+  final boolean summarizeEvents;
+  final long evaluationCacheSize;
   final long reconnectTimeMs;
 
   protected LDConfig(Builder builder) {
@@ -93,6 +98,8 @@ public final class LDConfig {
     }
     this.startWaitMillis = builder.startWaitMillis;
     this.samplingInterval = builder.samplingInterval;
+    this.summarizeEvents = builder.summarizeEvents;
+    this.evaluationCacheSize = builder.evaluationCacheSize;
     this.reconnectTimeMs = builder.reconnectTimeMillis;
 
 
@@ -165,6 +172,8 @@ public final class LDConfig {
     private FeatureStore featureStore = new InMemoryFeatureStore();
     private long startWaitMillis = DEFAULT_START_WAIT_MILLIS;
     private int samplingInterval = DEFAULT_SAMPLING_INTERVAL;
+    private boolean summarizeEvents = false;
+    private long evaluationCacheSize = 0;
     private long reconnectTimeMillis = DEFAULT_RECONNECT_TIME_MILLIS;
     private Set<String> privateAttrNames = new HashSet<>();
 
@@ -295,6 +304,8 @@ public final class LDConfig {
     /**
      * Set the capacity of the events buffer. The client buffers up to this many events in memory before flushing. If the capacity is exceeded before the buffer is flushed, events will be discarded.
      * Increasing the capacity means that events are less likely to be discarded, at the cost of consuming more memory. The default value is 10000 elements. The default flush interval (set by flushInterval) is 5 seconds.
+     * The capacity is limited to 2<sup>30</sup>, and a value below 1 is treated as 1. The buffer reserves room for the next power of two, so a
+     * capacity of 10000 takes as much memory as one of 16384, but holds no more than 10000 events.
      *
      * @param capacity the capacity of the event buffer
      * @return the builder
@@ -454,6 +465,34 @@ public final class LDConfig {
       return this;
     }
 
+    /**
+     * Set whether flag evaluations are summarized instead of being sent as individual feature events. When
+     * enabled, the client counts evaluations per flag, version and value during each flush interval and sends a
+     * single summary, plus one record per distinct user, so the cost of analytics no longer grows with the
+     * number of evaluations. Custom and identify events are sent as usual. By default, this is false.
+     *
+     * @param summarizeEvents true to summarize feature events
+     * @return the builder
+     */
+    public Builder summarizeEvents(boolean summarizeEvents) {
+      this.summarizeEvents = summarizeEvents;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of evaluation results to cache, keyed by user and flag. A cached result is reused
+     * for as long as the flag and its prerequisites keep the versions it was computed from, and the same
+     * analytics events are sent as for a full evaluation. Cache statistics are available from
+     * {@link LDClient#getEvaluationCacheStats()}. By default, this is zero, which disables the cache.
+     *
+     * @param evaluationCacheSize the maximum number of cached results
+     * @return the builder
+     */
+    public Builder evaluationCacheSize(long evaluationCacheSize) {
+      this.evaluationCacheSize = evaluationCacheSize;
+      return this;
+    }
+
     /**
      * The reconnect base time in milliseconds for the streaming connection. The streaming connection
      * uses an exponential backoff algorithm (with jitter) for reconnects, but will start the backoff
@@ -71,11 +71,11 @@ public class LDUser {
   }
 
   protected JsonElement getValueForEvaluation(String attribute) {
-    try {
-      return UserAttribute.valueOf(attribute).get(this);
-    } catch (IllegalArgumentException expected) {
-      return getCustom(attribute);
+    UserAttribute builtIn = UserAttribute.forName(attribute);
+    if (builtIn != null) {
+      return builtIn.get(this);
     }
+    return getCustom(attribute);
   }
 
   JsonPrimitive getKey() {
@@ -23,6 +23,10 @@ final class NewRelicReflector {
     }
   }
 
+   static boolean isEnabled() {
+    return addCustomParameter != null;
+   }
+
    static void annotateTransaction(String featureKey, String value) {
     if (addCustomParameter != null) {
       try {
@@ -0,0 +1,35 @@
+package com.launchdarkly.client;
+
+import java.util.Map;
+
+/**
+ * A view of a feature store that can tell the client when its contents change, so that it can reuse what it
+ * looked up until then instead of asking the store again. See {@link InMemoryFeatureStore#observableOf}.
+ */
+interface ObservableFeatureStore {
+  /**
+   * Returns a number that increases every time any flag in the store changes. If two calls return the same
+   * number, every lookup made in between returned what the store still holds.
+   */
+  long getGeneration();
+
+  /**
+   * Returns an unmodifiable, point-in-time view of the store's contents that later changes do not affect.
+   * Unlike {@link FeatureStore#all()}, the view is not copied and includes flags that have been deleted.
+   */
+  Map<String, FeatureFlag> snapshot();
+
+  /**
+   * Registers a listener that is called after each change to the store's contents.
+   */
+  void addListener(Listener listener);
+
+  void removeListener(Listener listener);
+
+  interface Listener {
+    /**
+     * Called once the change is visible to readers of the store. Implementations must not block.
+     */
+    void storeChanged();
+  }
+}
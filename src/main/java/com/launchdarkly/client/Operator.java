@@ -96,4 +96,19 @@ enum Operator {
     }
   };
   abstract boolean apply(JsonPrimitive uValue, JsonPrimitive cValue);
+
+  /**
+   * Returns the operator with the given name, or null if the name is null or not a known operator, so that flags
+   * using an operator added in a later SDK version can still be read.
+   */
+  static Operator forName(String name) {
+    if (name == null) {
+      return null;
+    }
+    try {
+      return valueOf(name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
 }
@@ -15,13 +15,22 @@ public class PollingProcessor implements UpdateProcessor {
   private final FeatureRequestor requestor;
   private final LDConfig config;
   private final FeatureStore store;
+  private final FeatureStoreListeners updates;
   private AtomicBoolean initialized = new AtomicBoolean(false);
   private ScheduledExecutorService scheduler = null;
 
   PollingProcessor(LDConfig config, FeatureRequestor requestor) {
+    this(config, requestor, new FeatureStoreListeners());
+  }
+
+  /**
+   * @param updates called after each write to the store
+   */
+  PollingProcessor(LDConfig config, FeatureRequestor requestor, FeatureStoreListeners updates) {
     this.requestor = requestor;
     this.config = config;
     this.store = config.featureStore;
+    this.updates = updates;
   }
 
   @Override
@@ -50,6 +59,7 @@ public class PollingProcessor implements UpdateProcessor {
       public void run() {
         try {
           store.init(requestor.getAllFlags());
+          updates.storeChanged();
           if (!initialized.getAndSet(true)) {
             logger.info("Initialized LaunchDarkly client.");
             initFuture.set(null);
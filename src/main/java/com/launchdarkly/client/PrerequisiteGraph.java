@@ -0,0 +1,174 @@
+package com.launchdarkly.client;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which flags depend on which prerequisites, and links each {@link CompiledFlag} directly to the compiled
+ * prerequisites it needs, so that evaluation never has to look prerequisites up in the store.
+ * <p>
+ * Whenever a flag changes, that flag and everything that transitively depends on it are relinked in topological
+ * order, prerequisites first. A prerequisite that would close a cycle is never linked; it is marked as cyclic and
+ * evaluation treats it as a failed prerequisite.
+ * <p>
+ * The flags passed in belong to a snapshot that has not been published yet. A flag whose links change is
+ * replaced in that map by a relinked copy; flag instances are never modified, because older snapshots that
+ * readers may still be using share them.
+ * <p>
+ * This class is not thread-safe; the owning store must serialize calls to it.
+ */
+final class PrerequisiteGraph {
+  private static final int IN_PROGRESS = 1;
+  private static final int DONE = 2;
+
+  // prerequisite key -> keys of the flags that list it as a prerequisite
+  private final Map<String, Set<String>> dependents = new HashMap<>();
+
+  /**
+   * Rebuilds the graph from scratch and links every flag in the map, replacing flags whose links change.
+   */
+  void init(Map<String, FeatureFlag> flags) {
+    dependents.clear();
+    for (FeatureFlag flag : flags.values()) {
+      addEdges(flag);
+    }
+    relink(flags, new HashSet<>(flags.keySet()));
+  }
+
+  /**
+   * Updates the graph after the flag stored under {@code key} changed from {@code old} (which may be null) to
+   * whatever the map now holds, and relinks everything the change affects.
+   */
+  void update(Map<String, FeatureFlag> flags, String key, FeatureFlag old) {
+    if (old != null) {
+      removeEdges(old);
+    }
+    addEdges(flags.get(key));
+    relink(flags, affectedBy(key));
+  }
+
+  private Set<String> affectedBy(String key) {
+    Set<String> affected = new HashSet<>();
+    Deque<String> pending = new ArrayDeque<>();
+    affected.add(key);
+    pending.add(key);
+    while (!pending.isEmpty()) {
+      Set<String> ds = dependents.get(pending.poll());
+      if (ds != null) {
+        for (String d : ds) {
+          if (affected.add(d)) {
+            pending.add(d);
+          }
+        }
+      }
+    }
+    return affected;
+  }
+
+  private void relink(Map<String, FeatureFlag> flags, Set<String> keys) {
+    Map<String, Integer> state = new HashMap<>();
+    Deque<Frame> stack = new ArrayDeque<>();
+    for (String start : keys) {
+      if (state.containsKey(start)) {
+        continue;
+      }
+      state.put(start, IN_PROGRESS);
+      stack.push(new Frame(start, prerequisiteKeys(live(flags.get(start)))));
+      while (!stack.isEmpty()) {
+        Frame frame = stack.peek();
+        if (frame.next < frame.prerequisites.size()) {
+          String prereqKey = frame.prerequisites.get(frame.next++);
+          if (!keys.contains(prereqKey)) {
+            // Unaffected by this change, so it is already linked
+            continue;
+          }
+          Integer s = state.get(prereqKey);
+          if (s == null) {
+            state.put(prereqKey, IN_PROGRESS);
+            stack.push(new Frame(prereqKey, prerequisiteKeys(live(flags.get(prereqKey)))));
+          } else if (s == IN_PROGRESS) {
+            frame.cyclic.add(prereqKey);
+          }
+        } else {
+          stack.pop();
+          state.put(frame.key, DONE);
+          link(flags, live(flags.get(frame.key)), frame.cyclic);
+        }
+      }
+    }
+  }
+
+  private static void link(Map<String, FeatureFlag> flags, FeatureFlag flag, Set<String> cyclic) {
+    if (flag == null) {
+      return;
+    }
+    CompiledFlag compiled = flag.getCompiled();
+    int count = compiled.getPrerequisiteCount();
+    if (count == 0) {
+      return;
+    }
+    CompiledFlag[] targets = new CompiledFlag[count];
+    boolean[] cycles = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      String prereqKey = compiled.getPrerequisiteKey(i);
+      FeatureFlag target = live(flags.get(prereqKey));
+      targets[i] = target == null ? null : target.getCompiled();
+      cycles[i] = cyclic.contains(prereqKey);
+    }
+    if (!compiled.isLinkedTo(targets, cycles)) {
+      flags.put(flag.getKey(), flag.withCompiled(compiled.link(targets, cycles)));
+    }
+  }
+
+  private void addEdges(FeatureFlag flag) {
+    for (String prereqKey : prerequisiteKeys(flag)) {
+      Set<String> ds = dependents.get(prereqKey);
+      if (ds == null) {
+        ds = new HashSet<>();
+        dependents.put(prereqKey, ds);
+      }
+      ds.add(flag.getKey());
+    }
+  }
+
+  private void removeEdges(FeatureFlag flag) {
+    for (String prereqKey : prerequisiteKeys(flag)) {
+      Set<String> ds = dependents.get(prereqKey);
+      if (ds != null) {
+        ds.remove(flag.getKey());
+        if (ds.isEmpty()) {
+          dependents.remove(prereqKey);
+        }
+      }
+    }
+  }
+
+  private static List<String> prerequisiteKeys(FeatureFlag flag) {
+    if (flag == null || flag.isDeleted()) {
+      return Collections.emptyList();
+    }
+    return flag.getCompiled().getPrerequisiteKeys();
+  }
+
+  private static FeatureFlag live(FeatureFlag flag) {
+    return flag == null || flag.isDeleted() ? null : flag;
+  }
+
+  private static final class Frame {
+    private final String key;
+    private final List<String> prerequisites;
+    private final Set<String> cyclic = new HashSet<>();
+    private int next;
+
+    Frame(String key, List<String> prerequisites) {
+      this.key = key;
+      this.prerequisites = prerequisites;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package com.launchdarkly.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes and receives notices of changed flag keys on a Redis channel, so that instances sharing a prefix
+ * can drop or reload exactly the flags another instance wrote.
+ * <p>
+ * A message is this instance's id followed by the changed keys, one per line. Messages an instance sent itself
+ * are ignored. Notices sent while the subscription is down are lost, so after reconnecting the handler is
+ * asked to resynchronize everything.
+ */
+class RedisChangeSubscriber implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(RedisChangeSubscriber.class);
+  private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+  interface Handler {
+    /**
+     * Called with the keys another instance changed.
+     */
+    void changed(Collection<String> keys);
+
+    /**
+     * Called when notices may have been missed, so any key may have changed.
+     */
+    void resync();
+  }
+
+  private final byte[] channel;
+  private final String instanceId = UUID.randomUUID().toString();
+  private final Handler handler;
+  private final ExecutorService executor;
+  final BinaryJedisPubSub pubSub = new PubSub();
+  private volatile Jedis connection;
+  private volatile boolean closed;
+
+  RedisChangeSubscriber(final JedisPool pool, String channel, Handler handler) {
+    this(channel, handler);
+    this.executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        subscribe(pool);
+      }
+    });
+  }
+
+  /**
+   * Creates a subscriber that publishes but does not subscribe until messages are passed to {@link #pubSub}.
+   */
+  RedisChangeSubscriber(String channel, Handler handler) {
+    this.channel = SafeEncoder.encode(channel);
+    this.handler = handler;
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("LaunchDarkly-RedisChangeSubscriber-%d")
+        .build();
+    this.executor = Executors.newSingleThreadExecutor(threadFactory);
+  }
+
+  /**
+   * Tells the other instances that the given keys changed.
+   */
+  void publish(Jedis jedis, Collection<String> keys) {
+    if (!keys.isEmpty()) {
+      jedis.publish(channel, encode(instanceId, keys));
+    }
+  }
+
+  private void subscribe(JedisPool pool) {
+    while (!closed) {
+      try (Jedis jedis = pool.getResource()) {
+        connection = jedis;
+        // close() may have run before the connection was visible to it
+        if (closed) {
+          return;
+        }
+        jedis.subscribe(pubSub, channel);
+      } catch (JedisException e) {
+        if (closed) {
+          return;
+        }
+        logger.warn("Lost subscription to flag changes in Redis; retrying", e);
+      } finally {
+        connection = null;
+      }
+      try {
+        TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    // Closing the socket ends subscribe() whether or not the server has confirmed the subscription yet
+    Jedis jedis = connection;
+    if (jedis != null) {
+      jedis.disconnect();
+    }
+    executor.shutdownNow();
+  }
+
+  static byte[] encode(String instanceId, Collection<String> keys) {
+    StringBuilder sb = new StringBuilder(instanceId);
+    for (String key : keys) {
+      sb.append('\n').append(key);
+    }
+    return SafeEncoder.encode(sb.toString());
+  }
+
+  /**
+   * Returns the keys in the message, or null if this instance sent it.
+   */
+  static List<String> decode(String instanceId, byte[] message) {
+    List<String> lines = Arrays.asList(SafeEncoder.encode(message).split("\n"));
+    if (lines.get(0).equals(instanceId)) {
+      return null;
+    }
+    return new ArrayList<>(lines.subList(1, lines.size()));
+  }
+
+  private final class PubSub extends BinaryJedisPubSub {
+    private boolean subscribedBefore;
+
+    @Override
+    public void onSubscribe(byte[] channel, int subscribedChannels) {
+      boolean reconnect = subscribedBefore;
+      subscribedBefore = true;
+      if (reconnect) {
+        try {
+          handler.resync();
+        } catch (RuntimeException e) {
+          logger.error("Unexpected exception resynchronizing flags from Redis", e);
+        }
+      }
+    }
+
+    @Override
+    public void onMessage(byte[] channel, byte[] message) {
+      try {
+        List<String> keys = decode(instanceId, message);
+        if (keys != null) {
+          handler.changed(keys);
+        }
+      } catch (RuntimeException e) {
+        logger.error("Unexpected exception handling flag changes from Redis", e);
+      }
+    }
+  }
+}
@@ -8,20 +8,29 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -35,12 +44,66 @@ public class RedisFeatureStore implements FeatureStore {
   private static final Logger logger = LoggerFactory.getLogger(RedisFeatureStore.class);
   private static final String DEFAULT_PREFIX = "launchdarkly";
   private static final String INIT_KEY = "$initialized$";
+  private static final int MAX_INIT_ATTEMPTS = 3;
+  private static final long WRITTEN = -1;
+  private static final long VERSION_UNKNOWN = -2;
+  private static final int INIT_CHUNK_SIZE = 500;
+  private static final int STAGING_TTL_SECS = 600;
+
+  /**
+   * Moves the staged flags and versions into place and marks the store as initialized. KEYS are the staged
+   * features and versions, the live features and versions, and the initialized marker. A staging key that
+   * doesn't exist stands for an empty hash.
+   * <p>
+   * Replacing a hash frees the old one, which takes time in proportion to its size, and RENAME or DEL do that
+   * while Redis waits. UNLINK, where the server has it (Redis 4.0 and later), frees it in the background instead;
+   * on older servers the call fails harmlessly and the old hash is freed inline.
+   */
+  private static final String SWAP_SCRIPT =
+      "for i = 1, 2 do\n" +
+      "  redis.pcall('UNLINK', KEYS[i + 2])\n" +
+      "  if redis.call('EXISTS', KEYS[i]) == 1 then\n" +
+      "    redis.call('RENAME', KEYS[i], KEYS[i + 2])\n" +
+      "    redis.call('PERSIST', KEYS[i + 2])\n" +
+      "  else\n" +
+      "    redis.call('DEL', KEYS[i + 2])\n" +
+      "  end\n" +
+      "end\n" +
+      "redis.call('SET', KEYS[5], '1')\n" +
+      "return 1\n";
+
+  /**
+   * Writes a flag if it is newer than the stored one. KEYS are the features and versions hashes; ARGV are the
+   * flag key, version and data. Returns -1 if the flag was written, -2 if a flag is stored but its version is
+   * not recorded, and otherwise the stored version.
+   * <p>
+   * Only the versions hash is compared, so the script never has to decode a flag. A flag without a recorded
+   * version was written by an older SDK; the client then compares it itself and records its version, so that
+   * happens once per flag.
+   */
+  private static final String UPSERT_SCRIPT =
+      "local current = redis.call('HGET', KEYS[2], ARGV[1])\n" +
+      "if not current then\n" +
+      "  if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then return -2 end\n" +
+      "elseif tonumber(current) >= tonumber(ARGV[2]) then\n" +
+      "  return tonumber(current)\n" +
+      "end\n" +
+      "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n" +
+      "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])\n" +
+      "return -1\n";
+  private static final String UPSERT_SCRIPT_SHA = DigestUtils.sha1Hex(UPSERT_SCRIPT);
   private static final String CACHE_REFRESH_THREAD_POOL_NAME_FORMAT = "RedisFeatureStore-cache-refresher-pool-%d";
   private final JedisPool pool;
   private LoadingCache<String, Optional<FeatureFlag>> cache;
   private final LoadingCache<String, Boolean> initCache = createInitCache();
   private String prefix;
+  private byte[] featuresKey;
+  private byte[] versionsKey;
+  private byte[] initedKey;
+  private FeatureFlagCodec codec = FeatureFlagCodec.JSON;
   private ListeningExecutorService executorService;
+  private FeatureFlagMirror mirror;
+  private RedisChangeSubscriber changes;
 
   /**
    * Creates a new store instance that connects to Redis with the provided host, port, prefix, and cache timeout. Uses a default
@@ -118,7 +181,14 @@ public class RedisFeatureStore implements FeatureStore {
       this.pool = new JedisPool(builder.poolConfig, builder.uri, builder.connectTimeout, builder.socketTimeout);
     }
     setPrefix(builder.prefix);
+    this.codec = FeatureFlagCodec.forEncoding(builder.encoding);
     createCache(builder.cacheTimeSecs, builder.refreshStaleValues, builder.asyncRefresh);
+    if (builder.mirrorRefreshMillis > 0) {
+      this.mirror = new FeatureFlagMirror(new MirrorSource(), builder.mirrorRefreshMillis, TimeUnit.MILLISECONDS);
+    }
+    if (builder.changeNotifications) {
+      this.changes = new RedisChangeSubscriber(pool, prefix + ":changes", new ChangeHandler(cache, mirror));
+    }
   }
 
   /**
@@ -126,7 +196,7 @@ public class RedisFeatureStore implements FeatureStore {
    */
   public RedisFeatureStore() {
     pool = new JedisPool(getPoolConfig(), "localhost");
-    this.prefix = DEFAULT_PREFIX;
+    setPrefix(DEFAULT_PREFIX);
   }
 
   private void setPrefix(String prefix) {
@@ -135,6 +205,9 @@ public class RedisFeatureStore implements FeatureStore {
     } else {
       this.prefix = prefix;
     }
+    this.featuresKey = SafeEncoder.encode(featuresKey());
+    this.versionsKey = SafeEncoder.encode(featuresKey() + ":versions");
+    this.initedKey = SafeEncoder.encode(this.prefix + ":$inited");
   }
 
   private void createCache(long cacheTimeSecs) {
@@ -210,7 +283,9 @@ public class RedisFeatureStore implements FeatureStore {
   @Override
   public FeatureFlag get(String key) {
     FeatureFlag featureFlag;
-    if (cache != null) {
+    if (mirror != null && mirror.isLoaded()) {
+      featureFlag = mirror.get(key);
+    } else if (cache != null) {
       featureFlag = cache.getUnchecked(key).orNull();
     } else {
       featureFlag = getRedis(key);
@@ -223,52 +298,189 @@ public class RedisFeatureStore implements FeatureStore {
 
   /**
    * Returns a {@link java.util.Map} of all associated features. This implementation does not take advantage
-   * of the in-memory cache, so fetching all features will involve a fetch from Redis.
+   * of the in-memory cache, so fetching all features will involve a fetch from Redis, unless the store keeps
+   * a local mirror (see {@link RedisFeatureStoreBuilder#localMirror(long, TimeUnit)}).
    *
    * @return a map of all associated features.
    */
   @Override
   public Map<String, FeatureFlag> all() {
+    if (mirror != null && mirror.isLoaded()) {
+      return mirror.all();
+    }
     try (Jedis jedis = pool.getResource()) {
-      Map<String, String> featuresJson = jedis.hgetAll(featuresKey());
-      Map<String, FeatureFlag> result = new HashMap<>();
-      Gson gson = new Gson();
-
-      Type type = new TypeToken<FeatureFlag>() {
-      }.getType();
+      return decodeAll(jedis.hgetAll(featuresKey), false);
+    }
+  }
 
-      for (Map.Entry<String, String> entry : featuresJson.entrySet()) {
-        FeatureFlag featureFlag = gson.fromJson(entry.getValue(), type);
-        if (!featureFlag.isDeleted()) {
-          result.put(entry.getKey(), featureFlag);
-        }
+  private static Map<String, FeatureFlag> decodeAll(Map<byte[], byte[]> stored, boolean includeDeleted) {
+    Map<String, FeatureFlag> result = new HashMap<>();
+    for (Map.Entry<byte[], byte[]> entry : stored.entrySet()) {
+      FeatureFlag featureFlag = FeatureFlagCodec.decode(entry.getValue());
+      if (includeDeleted || !featureFlag.isDeleted()) {
+        featureFlag.compile();
+        result.put(SafeEncoder.encode(entry.getKey()), featureFlag);
       }
-      return result;
     }
+    return result;
   }
 
   /**
    * Initializes (or re-initializes) the store with the specified set of features. Any existing entries
    * will be removed.
+   * <p>
+   * The new flags are compared with the recorded versions of the stored flags, without reading the flags
+   * themselves, and only the flags that differ are written or removed, in one transaction. The whole set is rewritten only when the store has not been
+   * initialized yet or more than {@value #INIT_CHUNK_SIZE} flags differ: it is then written to staging keys in
+   * pipelined chunks and swapped in by a single script, so Redis is never blocked for the whole load and readers
+   * never see a partly written set of flags. Only the changed keys are evicted from the in-memory cache.
    *
    * @param features the features to set the store
    */
   @Override
   public void init(Map<String, FeatureFlag> features) {
+    Set<String> changed = null;
     try (Jedis jedis = pool.getResource()) {
-      Gson gson = new Gson();
+      for (int attempt = 0; attempt < MAX_INIT_ATTEMPTS && changed == null; attempt++) {
+        changed = replaceAll(jedis, features, true);
+      }
+      if (changed == null) {
+        logger.warn("Flags changed in Redis while writing them for init; replacing them regardless");
+        changed = replaceAll(jedis, features, false);
+      }
+      if (changes != null) {
+        changes.publish(jedis, changed);
+      }
+    }
+    if (cache != null) {
+      cache.invalidateAll(changed);
+    }
+    if (mirror != null) {
+      mirror.replace(features);
+    }
+    initCache.put(INIT_KEY, true);
+  }
+
+  /**
+   * Replaces the stored flags with {@code features}, and returns the keys that changed. If {@code watch} is
+   * true, returns null instead if another client modified the flags meanwhile.
+   */
+  private Set<String> replaceAll(Jedis jedis, Map<String, FeatureFlag> features, boolean watch) {
+    if (watch) {
+      jedis.watch(featuresKey, versionsKey);
+    }
+    // Only the versions and the flag keys are read, never the flags themselves
+    Map<String, byte[]> versions = withStringKeys(jedis.hgetAll(versionsKey));
+    Set<String> changed = new HashSet<>();
+    for (FeatureFlag f : features.values()) {
+      byte[] version = versions.get(f.getKey());
+      if (version == null || !SafeEncoder.encode(version).equals(Integer.toString(f.getVersion()))) {
+        changed.add(f.getKey());
+      }
+    }
+    // Flags without a recorded version are rewritten, which records their versions
+    for (byte[] field : jedis.hkeys(featuresKey)) {
+      String key = SafeEncoder.encode(field);
+      if (!features.containsKey(key) || !versions.containsKey(key)) {
+        changed.add(key);
+      }
+    }
+    for (String key : versions.keySet()) {
+      if (!features.containsKey(key)) {
+        changed.add(key);
+      }
+    }
+    boolean inited = jedis.exists(initedKey);
+    if (changed.isEmpty() && inited) {
+      if (watch) {
+        jedis.unwatch();
+      }
+      return changed;
+    }
+
+    if (inited && changed.size() <= INIT_CHUNK_SIZE) {
       Transaction t = jedis.multi();
+      writeChanged(t, features, changed);
+      // EXEC returns null if the watched keys were modified
+      return t.exec() == null ? null : changed;
+    }
 
-      t.del(featuresKey());
+    String staging = prefix + ":staging:" + UUID.randomUUID();
+    byte[] stagingFeatures = SafeEncoder.encode(staging + ":features");
+    byte[] stagingVersions = SafeEncoder.encode(staging + ":versions");
+    writeStaged(jedis, features, stagingFeatures, stagingVersions);
 
-      for (FeatureFlag f : features.values()) {
-        t.hset(featuresKey(), f.getKey(), gson.toJson(f));
+    Transaction t = jedis.multi();
+    t.eval(SafeEncoder.encode(SWAP_SCRIPT), 5, stagingFeatures, stagingVersions, featuresKey, versionsKey, initedKey);
+    if (t.exec() == null) {
+      jedis.del(stagingFeatures, stagingVersions);
+      return null;
+    }
+    return changed;
+  }
+
+  /**
+   * Queues writes of the changed flags and their versions, and removal of the changed keys that are no longer
+   * in {@code features}.
+   */
+  private void writeChanged(Transaction t, Map<String, FeatureFlag> features, Set<String> changed) {
+    Map<byte[], byte[]> flags = new HashMap<>();
+    Map<byte[], byte[]> versions = new HashMap<>();
+    List<byte[]> removed = new ArrayList<>();
+    for (String key : changed) {
+      FeatureFlag f = features.get(key);
+      byte[] field = SafeEncoder.encode(key);
+      if (f == null) {
+        removed.add(field);
+      } else {
+        flags.put(field, codec.encode(f));
+        versions.put(field, SafeEncoder.encode(Integer.toString(f.getVersion())));
       }
+    }
+    if (!flags.isEmpty()) {
+      t.hmset(featuresKey, flags);
+      t.hmset(versionsKey, versions);
+    }
+    if (!removed.isEmpty()) {
+      byte[][] fields = removed.toArray(new byte[removed.size()][]);
+      t.hdel(featuresKey, fields);
+      t.hdel(versionsKey, fields);
+    }
+    t.set(initedKey, SafeEncoder.encode("1"));
+  }
 
-      t.exec();
+  /**
+   * Writes the flags and their versions to the staging keys, in chunks that are sent without waiting for each
+   * reply. The staging keys expire in case the swap never happens.
+   */
+  private void writeStaged(Jedis jedis, Map<String, FeatureFlag> features, byte[] stagingFeatures, byte[] stagingVersions) {
+    Pipeline p = jedis.pipelined();
+    Map<byte[], byte[]> flagChunk = new HashMap<>();
+    Map<byte[], byte[]> versionChunk = new HashMap<>();
+    boolean first = true;
+    for (FeatureFlag f : features.values()) {
+      byte[] field = SafeEncoder.encode(f.getKey());
+      flagChunk.put(field, codec.encode(f));
+      versionChunk.put(field, SafeEncoder.encode(Integer.toString(f.getVersion())));
+      if (flagChunk.size() == INIT_CHUNK_SIZE) {
+        p.hmset(stagingFeatures, flagChunk);
+        p.hmset(stagingVersions, versionChunk);
+        if (first) {
+          p.expire(stagingFeatures, STAGING_TTL_SECS);
+          p.expire(stagingVersions, STAGING_TTL_SECS);
+          first = false;
+        }
+        flagChunk = new HashMap<>();
+        versionChunk = new HashMap<>();
+      }
     }
-    cache.invalidateAll();
-    initCache.put(INIT_KEY, true);
+    if (!flagChunk.isEmpty()) {
+      p.hmset(stagingFeatures, flagChunk);
+      p.hmset(stagingVersions, versionChunk);
+      p.expire(stagingFeatures, STAGING_TTL_SECS);
+      p.expire(stagingVersions, STAGING_TTL_SECS);
+    }
+    p.sync();
   }
 
   /**
@@ -280,33 +492,21 @@ public class RedisFeatureStore implements FeatureStore {
    */
   @Override
   public void delete(String key, int version) {
-    Jedis jedis = null;
-    try {
-      Gson gson = new Gson();
-      jedis = pool.getResource();
-      jedis.watch(featuresKey());
-
-      FeatureFlag feature = getRedis(key, jedis);
-
-      if (feature != null && feature.getVersion() >= version) {
-        logger.warn("Attempted to delete flag: " + key + " version: " + feature.getVersion() +
-            " with a version that is the same or older: " + version);
-        return;
-      }
-
-      FeatureFlagBuilder newBuilder = new FeatureFlagBuilder(feature);
-      newBuilder.deleted(true);
-      newBuilder.version(version);
-      jedis.hset(featuresKey(), key, gson.toJson(newBuilder.build()));
-
-      if (cache != null) {
-        cache.invalidate(key);
-      }
-    } finally {
-      if (jedis != null) {
-        jedis.unwatch();
-        jedis.close();
-      }
+    FeatureFlag deleted = new FeatureFlagBuilder(key)
+        .deleted(true)
+        .version(version)
+        .build();
+    long current = compareAndSet(key, version, codec.encode(deleted));
+    if (current != WRITTEN) {
+      logger.warn("Attempted to delete flag: " + key + " version: " + current +
+          " with a version that is the same or older: " + version);
+      return;
+    }
+    if (cache != null) {
+      cache.invalidate(key);
+    }
+    if (mirror != null) {
+      mirror.put(deleted);
     }
   }
 
@@ -319,30 +519,79 @@ public class RedisFeatureStore implements FeatureStore {
    */
   @Override
   public void upsert(String key, FeatureFlag feature) {
-    Jedis jedis = null;
-    try {
-      jedis = pool.getResource();
-      Gson gson = new Gson();
-      jedis.watch(featuresKey());
-
-      FeatureFlag f = getRedis(key, jedis);
+    long current = compareAndSet(key, feature.getVersion(), codec.encode(feature));
+    if (current != WRITTEN) {
+      logger.warn("Attempted to update flag: " + key + " version: " + current +
+          " with a version that is the same or older: " + feature.getVersion());
+      return;
+    }
+    if (cache != null) {
+      cache.invalidate(key);
+    }
+    if (mirror != null) {
+      mirror.put(feature);
+    }
+  }
 
-      if (f != null && f.getVersion() >= feature.getVersion()) {
-        logger.warn("Attempted to update flag: " + key + " version: " + f.getVersion() +
-            " with a version that is the same or older: " + feature.getVersion());
-        return;
+  /**
+   * Stores the flag data if its version is newer than the stored one, and returns {@link #WRITTEN}, or else
+   * returns the stored version. The comparison and the write happen in one script call on the server.
+   */
+  private long compareAndSet(String key, int version, byte[] data) {
+    byte[] field = SafeEncoder.encode(key);
+    try (Jedis jedis = pool.getResource()) {
+      long result = (Long) evalScript(jedis, UPSERT_SCRIPT, UPSERT_SCRIPT_SHA, 2,
+          featuresKey, versionsKey, field, SafeEncoder.encode(Integer.toString(version)), data);
+      if (result == VERSION_UNKNOWN) {
+        result = compareAndSetUnversioned(jedis, field, version, data);
       }
+      if (result == WRITTEN && changes != null) {
+        changes.publish(jedis, Collections.singleton(key));
+      }
+      return result;
+    }
+  }
 
-      jedis.hset(featuresKey(), key, gson.toJson(feature));
-
-      if (cache != null) {
-        cache.invalidate(key);
+  /**
+   * Like {@link #compareAndSet}, for a stored flag whose version is not recorded. The stored flag is read here
+   * instead, and its version is recorded even if the write is refused. The write is retried if the flag changes
+   * in the meantime.
+   */
+  private long compareAndSetUnversioned(Jedis jedis, byte[] field, int version, byte[] data) {
+    try {
+      while (true) {
+        jedis.watch(featuresKey, versionsKey);
+        byte[] stored = jedis.hget(featuresKey, field);
+        int storedVersion = stored == null ? 0 : FeatureFlagCodec.readVersion(stored);
+        boolean refused = stored != null && storedVersion >= version;
+        Transaction t = jedis.multi();
+        if (refused) {
+          t.hset(versionsKey, field, SafeEncoder.encode(Integer.toString(storedVersion)));
+        } else {
+          t.hset(featuresKey, field, data);
+          t.hset(versionsKey, field, SafeEncoder.encode(Integer.toString(version)));
+        }
+        // EXEC returns null if the watched keys were modified
+        if (t.exec() != null) {
+          return refused ? storedVersion : WRITTEN;
+        }
       }
     } finally {
-      if (jedis != null) {
-        jedis.unwatch();
-        jedis.close();
+      jedis.unwatch();
+    }
+  }
+
+  /**
+   * Runs a script by its digest, sending the script itself only if the server does not have it cached.
+   */
+  private static Object evalScript(Jedis jedis, String script, String sha, int keyCount, byte[]... params) {
+    try {
+      return jedis.evalsha(SafeEncoder.encode(sha), keyCount, params);
+    } catch (JedisDataException e) {
+      if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+        throw e;
       }
+      return jedis.eval(SafeEncoder.encode(script), keyCount, params);
     }
   }
 
@@ -367,9 +616,15 @@ public class RedisFeatureStore implements FeatureStore {
   public void close() throws IOException {
     logger.info("Closing LaunchDarkly RedisFeatureStore");
     try {
+      if (changes != null) {
+        changes.close();
+      }
       if (executorService != null) {
         executorService.shutdownNow();
       }
+      if (mirror != null) {
+        mirror.close();
+      }
     } finally {
       pool.destroy();
     }
@@ -393,7 +648,8 @@ public class RedisFeatureStore implements FeatureStore {
 
   private Boolean getInit() {
     try (Jedis jedis = pool.getResource()) {
-      return jedis.exists(featuresKey());
+      // Stores initialized by earlier versions have no marker
+      return jedis.exists(initedKey) || jedis.exists(featuresKey);
     }
   }
 
@@ -404,25 +660,118 @@ public class RedisFeatureStore implements FeatureStore {
   }
 
   private FeatureFlag getRedis(String key, Jedis jedis) {
-    Gson gson = new Gson();
-    String featureJson = jedis.hget(featuresKey(), key);
+    byte[] data = jedis.hget(featuresKey, SafeEncoder.encode(key));
 
-    if (featureJson == null) {
+    if (data == null) {
       logger.debug("[get] Key: " + key + " not found in feature store. Returning null");
       return null;
     }
 
-    Type type = new TypeToken<FeatureFlag>() {
-    }.getType();
-    FeatureFlag f = gson.fromJson(featureJson, type);
+    FeatureFlag f = FeatureFlagCodec.decode(data);
 
     if (f.isDeleted()) {
       logger.debug("[get] Key: " + key + " has been deleted. Returning null");
       return null;
     }
+    f.compile();
     return f;
   }
 
+  /**
+   * Reads flags for the local mirror. The versions hash is small compared to the flags, so the mirror can read
+   * it on every refresh and fetch only the flags that changed.
+   */
+  private final class MirrorSource implements FeatureFlagMirror.Source {
+    @Override
+    public Map<String, Integer> versions() {
+      try (Jedis jedis = pool.getResource()) {
+        Pipeline p = jedis.pipelined();
+        Response<Map<byte[], byte[]>> stored = p.hgetAll(versionsKey);
+        Response<Long> count = p.hlen(featuresKey);
+        p.sync();
+        // Flags written before versions were kept separately have to be read in full
+        if (stored.get().size() != count.get()) {
+          return null;
+        }
+        Map<String, Integer> versions = new HashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : stored.get().entrySet()) {
+          versions.put(SafeEncoder.encode(entry.getKey()), Integer.parseInt(SafeEncoder.encode(entry.getValue())));
+        }
+        return versions;
+      }
+    }
+
+    @Override
+    public Map<String, FeatureFlag> get(Collection<String> keys) {
+      byte[][] fields = new byte[keys.size()][];
+      int i = 0;
+      for (String key : keys) {
+        fields[i++] = SafeEncoder.encode(key);
+      }
+      try (Jedis jedis = pool.getResource()) {
+        List<byte[]> stored = jedis.hmget(featuresKey, fields);
+        Map<String, FeatureFlag> result = new HashMap<>();
+        for (i = 0; i < fields.length; i++) {
+          if (stored.get(i) != null) {
+            FeatureFlag featureFlag = FeatureFlagCodec.decode(stored.get(i));
+            featureFlag.compile();
+            result.put(SafeEncoder.encode(fields[i]), featureFlag);
+          }
+        }
+        return result;
+      }
+    }
+
+    @Override
+    public Map<String, FeatureFlag> all() {
+      try (Jedis jedis = pool.getResource()) {
+        return decodeAll(jedis.hgetAll(featuresKey), true);
+      }
+    }
+  }
+
+  /**
+   * Drops or reloads the flags that other instances sharing the prefix changed. Either the cache or the mirror
+   * may be null.
+   */
+  static final class ChangeHandler implements RedisChangeSubscriber.Handler {
+    private final LoadingCache<String, Optional<FeatureFlag>> cache;
+    private final FeatureFlagMirror mirror;
+
+    ChangeHandler(LoadingCache<String, Optional<FeatureFlag>> cache, FeatureFlagMirror mirror) {
+      this.cache = cache;
+      this.mirror = mirror;
+    }
+
+    @Override
+    public void changed(Collection<String> keys) {
+      if (cache != null) {
+        cache.invalidateAll(keys);
+      }
+      if (mirror != null) {
+        mirror.refresh(keys);
+      }
+    }
+
+    @Override
+    public void resync() {
+      if (cache != null) {
+        cache.invalidateAll();
+      }
+      if (mirror != null) {
+        mirror.refresh();
+      }
+    }
+  }
+
+  private static Map<String, byte[]> withStringKeys(Map<byte[], byte[]> map) {
+    Map<String, byte[]> result = new HashMap<>();
+    for (Map.Entry<byte[], byte[]> entry : map.entrySet()) {
+      result.put(SafeEncoder.encode(entry.getKey()), entry.getValue());
+    }
+    return result;
+  }
+
   private static JedisPoolConfig getPoolConfig() {
     return new JedisPoolConfig();
   }
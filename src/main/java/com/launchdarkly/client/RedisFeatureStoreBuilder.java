@@ -33,6 +33,9 @@ public class RedisFeatureStoreBuilder {
     protected int socketTimeout = Protocol.DEFAULT_TIMEOUT;
     protected long cacheTimeSecs;
     protected JedisPoolConfig poolConfig;
+    protected FeatureFlagEncoding encoding = FeatureFlagEncoding.JSON;
+    protected long mirrorRefreshMillis;
+    protected boolean changeNotifications = false;
 
     /**
      * The constructor accepts the mandatory fields that must be specified at a minimum to construct a {@link com.launchdarkly.client.RedisFeatureStore}.
@@ -146,6 +149,59 @@ public class RedisFeatureStoreBuilder {
         return this;
     }
 
+    /**
+     * Optionally configures the format in which flags are written to Redis. Flags are always read in whichever
+     * format they were written, so instances sharing a prefix can be switched to a new encoding one at a time.
+     * Switch to a binary encoding only once no instance of an older SDK version reads from the same prefix.
+     *
+     * @param encoding the format for written flags; defaults to {@link FeatureFlagEncoding#JSON}
+     * @return the builder
+     */
+    public RedisFeatureStoreBuilder encoding(FeatureFlagEncoding encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    /**
+     * Optionally keeps a complete copy of the stored flags in memory, so that {@link RedisFeatureStore#get(String)} and
+     * {@link RedisFeatureStore#all()} are answered without a round trip to Redis. This suits daemon mode
+     * ({@link LDConfig.Builder#useLdd(boolean)}), where every evaluation reads the store.
+     *
+     * The copy is refreshed in the background at the given interval. Each refresh reads only the stored flag versions and
+     * then fetches just the flags that changed. Changes written through this store are visible immediately; changes written
+     * by other processes are visible within one interval for as long as Redis is reachable. Older SDK versions don't record
+     * the versions of the flags they write, so every tenth refresh reads all the flags in full, and their changes are visible
+     * within ten intervals. If a refresh fails, the last loaded flags keep being served.
+     *
+     * Until the first refresh completes, reads go to Redis as usual, through the cache configured with
+     * {@link RedisFeatureStoreBuilder#cacheTime(long, TimeUnit)} if there is one. After that the cache is no longer read.
+     *
+     * @param refreshInterval the longest time a change made by another process goes unseen; 0 disables the copy
+     * @param timeUnit the time unit for the interval
+     * @return the builder
+     */
+    public RedisFeatureStoreBuilder localMirror(long refreshInterval, TimeUnit timeUnit) {
+        this.mirrorRefreshMillis = timeUnit.toMillis(refreshInterval);
+        return this;
+    }
+
+    /**
+     * Optionally tells other instances that share the same Redis prefix about every flag this store writes, and listens for
+     * the flags they write. Changed flags are dropped from the local cache, or reloaded into the local mirror, as soon as
+     * the notice arrives, so a long cache time no longer means serving stale flags.
+     *
+     * Notices are sent over Redis pub/sub on the channel {@code <prefix>:changes}, and the subscription holds one
+     * connection from the pool. Notices sent while the subscription is down are lost, so after it reconnects the whole
+     * cache is dropped. Enable this on every instance that shares the prefix.
+     *
+     * @param enabled turns on publishing of and listening for flag changes
+     * @return the builder
+     */
+    public RedisFeatureStoreBuilder changeNotifications(boolean enabled) {
+        this.changeNotifications = enabled;
+        return this;
+    }
+
     /**
      * Optional override which sets the connection timeout for the underlying Jedis pool which otherwise defaults to
      * {@link redis.clients.jedis.Protocol#DEFAULT_TIMEOUT}
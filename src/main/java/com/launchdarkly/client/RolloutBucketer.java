@@ -0,0 +1,176 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+
+import java.nio.charset.Charset;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes percentage rollout buckets for one flag without allocating on each evaluation.
+ * <p>
+ * A user's bucket is the first 60 bits of {@code sha1(key + "." + salt + "." + id)}, where {@code id} is the
+ * bucketing attribute followed by {@code "." + secondary} if the user has a secondary key. The
+ * {@code key.salt.} prefix is encoded once per flag, and each thread reuses its own {@link MessageDigest} and
+ * buffers. Rather than converting the bucket to a float and summing float weights, rollouts compare the raw
+ * 60-bit value against integer thresholds that give exactly the same results as the float arithmetic.
+ */
+final class RolloutBucketer {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final float long_scale = (float) 0xFFFFFFFFFFFFFFFL;
+  static final long BUCKET_LIMIT = 0x1000000000000000L; // 2^60, one more than the largest bucket value
+
+  private static final ThreadLocal<HashState> hashState = new ThreadLocal<HashState>() {
+    @Override
+    protected HashState initialValue() {
+      return new HashState();
+    }
+  };
+
+  private final byte[] prefix;
+  private final AttributeAccessor bucketBy;
+  private final String contextKey;
+
+  RolloutBucketer(String key, String salt, String bucketBy) {
+    this.prefix = (key + "." + salt + ".").getBytes(UTF_8);
+    this.bucketBy = AttributeAccessor.forName(bucketBy == null ? "key" : bucketBy);
+    // Rollouts that hash the same input share this key, and so share a memoized bucket
+    this.contextKey = key + "." + salt + "." + this.bucketBy;
+  }
+
+  /**
+   * Identifies the bucket this computes, for memoizing it in an {@link EvaluationContext}.
+   */
+  String getContextKey() {
+    return contextKey;
+  }
+
+  /**
+   * Returns the user's bucket as an integer in {@code [0, 2^60)}. Users whose bucketing attribute is missing or
+   * not a string get bucket 0.
+   */
+  long bucketValue(LDUser user) {
+    return bucketValue(user, user.getSecondary() == null ? null : user.getSecondary().getAsString());
+  }
+
+  /**
+   * Like {@link #bucketValue(LDUser)}, but reuses a bucket already computed in the context.
+   */
+  long bucketValue(LDUser user, EvaluationContext context) {
+    return context == null ? bucketValue(user) : context.bucketValue(this);
+  }
+
+  long bucketValue(LDUser user, String secondary) {
+    JsonElement userValue = bucketBy.get(user);
+    if (userValue == null || !userValue.isJsonPrimitive() || !userValue.getAsJsonPrimitive().isString()) {
+      return 0L;
+    }
+    return hashState.get().hash(prefix, userValue.getAsString(), secondary);
+  }
+
+  /**
+   * Returns the bucket as the float in {@code [0, 1]} that bucket thresholds are defined against.
+   */
+  static float toFloat(long bucketValue) {
+    return (float) bucketValue / long_scale;
+  }
+
+  /**
+   * Returns the smallest bucket value whose float form is {@code >= sum}. A bucket value is then below the
+   * threshold exactly when its float form is {@code < sum}, because the conversion to float is monotonic.
+   */
+  static long threshold(float sum) {
+    if (!(toFloat(BUCKET_LIMIT - 1) >= sum)) {
+      return BUCKET_LIMIT;
+    }
+    long lo = 0L;
+    long hi = BUCKET_LIMIT - 1;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (toFloat(mid) >= sum) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Per-thread digest and buffers. Strings are encoded as UTF-8 by hand into a reusable buffer, replacing
+   * unpaired surrogates with {@code '?'} as {@link String#getBytes(Charset)} does.
+   */
+  private static final class HashState {
+    private final MessageDigest sha1;
+    private final byte[] digest = new byte[20];
+    private byte[] buffer = new byte[128];
+    private int length;
+
+    HashState() {
+      try {
+        sha1 = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    long hash(byte[] prefix, String id, String secondary) {
+      length = 0;
+      append(id);
+      if (secondary != null) {
+        ensureCapacity(1);
+        buffer[length++] = '.';
+        append(secondary);
+      }
+      sha1.reset();
+      sha1.update(prefix);
+      sha1.update(buffer, 0, length);
+      try {
+        sha1.digest(digest, 0, digest.length);
+      } catch (DigestException e) {
+        throw new IllegalStateException(e);
+      }
+      long value = 0L;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (digest[i] & 0xFF);
+      }
+      // The first 15 hex digits of the digest
+      return value >>> 4;
+    }
+
+    private void append(String s) {
+      int n = s.length();
+      ensureCapacity(n * 3);
+      for (int i = 0; i < n; i++) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+          buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[length++] = (byte) (0xC0 | (c >> 6));
+          buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, s.charAt(++i));
+          buffer[length++] = (byte) (0xF0 | (cp >> 18));
+          buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          buffer[length++] = '?';
+        } else {
+          buffer[length++] = (byte) (0xE0 | (c >> 12));
+          buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    private void ensureCapacity(int extra) {
+      if (length + extra > buffer.length) {
+        byte[] bigger = new byte[Math.max(buffer.length * 2, length + extra)];
+        System.arraycopy(buffer, 0, bigger, 0, length);
+        buffer = bigger;
+      }
+    }
+  }
+}
@@ -20,12 +20,7 @@ class Rule extends VariationOrRollout {
     this.clauses = clauses;
   }
 
-  boolean matchesUser(LDUser user) {
-    for (Clause clause : clauses) {
-      if (!clause.matchesUser(user)) {
-        return false;
-      }
-    }
-    return true;
+  List<Clause> getClauses() {
+    return clauses;
   }
 }
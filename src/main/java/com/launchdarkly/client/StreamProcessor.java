@@ -31,15 +31,24 @@ class StreamProcessor implements UpdateProcessor {
   private final LDConfig config;
   private final String sdkKey;
   private final FeatureRequestor requestor;
+  private final FeatureStoreListeners updates;
   private volatile EventSource es;
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
 
   StreamProcessor(String sdkKey, LDConfig config, FeatureRequestor requestor) {
+    this(sdkKey, config, requestor, new FeatureStoreListeners());
+  }
+
+  /**
+   * @param updates called after each write to the store
+   */
+  StreamProcessor(String sdkKey, LDConfig config, FeatureRequestor requestor, FeatureStoreListeners updates) {
     this.store = config.featureStore;
     this.config = config;
     this.sdkKey = sdkKey;
     this.requestor = requestor;
+    this.updates = updates;
   }
 
   @Override
@@ -80,6 +89,7 @@ class StreamProcessor implements UpdateProcessor {
         switch (name) {
           case PUT:
             store.init(FeatureFlag.fromJsonMap(config, event.getData()));
+            updates.storeChanged();
             if (!initialized.getAndSet(true)) {
               initFuture.set(null);
               logger.info("Initialized LaunchDarkly client.");
@@ -88,16 +98,19 @@ class StreamProcessor implements UpdateProcessor {
           case PATCH: {
             FeaturePatchData data = gson.fromJson(event.getData(), FeaturePatchData.class);
             store.upsert(data.key(), data.feature());
+            updates.storeChanged();
             break;
           }
           case DELETE: {
             FeatureDeleteData data = gson.fromJson(event.getData(), FeatureDeleteData.class);
             store.delete(data.key(), data.version());
+            updates.storeChanged();
             break;
           }
           case INDIRECT_PUT:
             try {
               store.init(requestor.getAllFlags());
+              updates.storeChanged();
               if (!initialized.getAndSet(true)) {
                 initFuture.set(null);
                 logger.info("Initialized LaunchDarkly client.");
@@ -111,6 +124,7 @@ class StreamProcessor implements UpdateProcessor {
             try {
               FeatureFlag feature = requestor.getFlag(key);
               store.upsert(key, feature);
+              updates.storeChanged();
             } catch (IOException e) {
               logger.error("Encountered exception in LaunchDarkly client", e);
             }
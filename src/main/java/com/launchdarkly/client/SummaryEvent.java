@@ -0,0 +1,49 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of the flag evaluations made during one flush interval, in place of individual feature events.
+ */
+class SummaryEvent extends Event {
+  long startDate;
+  long endDate;
+  Map<String, FlagSummary> features;
+
+  SummaryEvent(long startDate, long endDate, Map<String, FlagSummary> features) {
+    super("summary", null, null);
+    this.startDate = startDate;
+    this.endDate = endDate;
+    this.features = features;
+  }
+
+  static class FlagSummary {
+    @SerializedName("default")
+    JsonElement defaultVal;
+    List<Counter> counters;
+
+    FlagSummary(JsonElement defaultVal, List<Counter> counters) {
+      this.defaultVal = defaultVal;
+      this.counters = counters;
+    }
+  }
+
+  static class Counter {
+    JsonElement value;
+    Integer version;
+    long count;
+    Boolean unknown;
+
+    Counter(JsonElement value, Integer version, long count) {
+      this.value = value;
+      this.version = version;
+      this.count = count;
+      // A missing version means the flag could not be found, and the default was served
+      this.unknown = version == null ? Boolean.TRUE : null;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.launchdarkly.client;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index from user keys to the variation that individually targets them, built once per flag
+ * version. Lookups cost the same no matter how many keys the flag targets.
+ * <p>
+ * The index is stored as a compact bucketed hash table: a single array holding the key strings (shared with the
+ * flag's target lists), a parallel array of target ordinals, and one offset per bucket. This keeps the per-key
+ * overhead to a few bytes on top of the key references, instead of an entry object per key.
+ */
+final class TargetIndex {
+  static final TargetIndex EMPTY = new TargetIndex(new LinkedHashMap<String, Integer>(), new CompiledFlag.Variation[0]);
+
+  private final int mask;
+  private final int[] bucketStart;
+  private final String[] keys;
+  private final int[] targets;
+  private final CompiledFlag.Variation[] variations;
+
+  private TargetIndex(Map<String, Integer> keyToTarget, CompiledFlag.Variation[] variations) {
+    int size = keyToTarget.size();
+    int buckets = Math.max(1, Integer.highestOneBit(size));
+    this.mask = buckets - 1;
+    this.bucketStart = new int[buckets + 1];
+    this.keys = new String[size];
+    this.targets = new int[size];
+    this.variations = variations;
+
+    // Counting sort of the keys by bucket, so each bucket is a contiguous run of the keys array
+    for (String key : keyToTarget.keySet()) {
+      bucketStart[bucket(key) + 1]++;
+    }
+    for (int i = 0; i < buckets; i++) {
+      bucketStart[i + 1] += bucketStart[i];
+    }
+    int[] next = new int[buckets];
+    System.arraycopy(bucketStart, 0, next, 0, buckets);
+    for (Map.Entry<String, Integer> entry : keyToTarget.entrySet()) {
+      int pos = next[bucket(entry.getKey())]++;
+      keys[pos] = entry.getKey();
+      targets[pos] = entry.getValue();
+    }
+  }
+
+  static TargetIndex build(List<Target> flagTargets, CompiledFlag.Variation[] flagVariations) {
+    if (flagTargets == null || flagTargets.isEmpty()) {
+      return EMPTY;
+    }
+    // If a key appears in more than one target list, the first list wins, as it did with a linear scan
+    Map<String, Integer> keyToTarget = new LinkedHashMap<>();
+    CompiledFlag.Variation[] variations = new CompiledFlag.Variation[flagTargets.size()];
+    for (int i = 0; i < flagTargets.size(); i++) {
+      Target target = flagTargets.get(i);
+      variations[i] = CompiledFlag.Variation.resolve(target.getVariation(), flagVariations);
+      if (target.getValues() != null) {
+        for (String key : target.getValues()) {
+          if (key != null && !keyToTarget.containsKey(key)) {
+            keyToTarget.put(key, i);
+          }
+        }
+      }
+    }
+    return keyToTarget.isEmpty() ? EMPTY : new TargetIndex(keyToTarget, variations);
+  }
+
+  /**
+   * Returns the variation targeted at this user key, or null if the key is not individually targeted.
+   */
+  CompiledFlag.Variation get(String userKey) {
+    if (keys.length == 0) {
+      return null;
+    }
+    int hash = userKey.hashCode();
+    int b = spread(hash) & mask;
+    for (int i = bucketStart[b], end = bucketStart[b + 1]; i < end; i++) {
+      String key = keys[i];
+      if (key.hashCode() == hash && key.equals(userKey)) {
+        return variations[targets[i]];
+      }
+    }
+    return null;
+  }
+
+  int size() {
+    return keys.length;
+  }
+
+  private int bucket(String key) {
+    return spread(key.hashCode()) & mask;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+}
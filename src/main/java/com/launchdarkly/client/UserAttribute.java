@@ -2,6 +2,9 @@ package com.launchdarkly.client;
 
 import com.google.gson.JsonElement;
 
+import java.util.HashMap;
+import java.util.Map;
+
 enum UserAttribute {
   key {
     JsonElement get(LDUser user) {
@@ -54,6 +57,22 @@ enum UserAttribute {
     }
   };
 
+  private static final Map<String, UserAttribute> byName = new HashMap<>();
+
+  static {
+    for (UserAttribute attribute : values()) {
+      byName.put(attribute.name(), attribute);
+    }
+  }
+
+  /**
+   * Returns the built-in attribute with this name, or null for a custom attribute. Unlike {@link #valueOf},
+   * this never throws.
+   */
+  static UserAttribute forName(String name) {
+    return name == null ? null : byName.get(name);
+  }
+
   /**
    * Gets value for Rule evaluation for a user.
    *
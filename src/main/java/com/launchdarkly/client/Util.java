@@ -24,4 +24,133 @@ class Util {
       return null;
     }
   }
+
+  /**
+   * Marks a value that {@link #jsonPrimitiveToMillis} could not convert.
+   */
+  static final long INVALID_TIMESTAMP = Long.MIN_VALUE;
+
+  /**
+   * Converts either a unix epoch millis number or RFC3339/ISO8601 timestamp as {@link JsonPrimitive} to epoch
+   * millis, accepting the same values as {@link #jsonPrimitiveToDateTime}. Timestamps of the form
+   * {@code yyyy-MM-ddTHH:mm:ss[.SSS][Z|+HH:mm|-HH:mm]} are parsed directly without allocating; anything else is
+   * handed to Joda.
+   * @param maybeDate wraps either a number or a string that may contain a valid timestamp.
+   * @return {@link #INVALID_TIMESTAMP} if input is not a valid format.
+   */
+  static long jsonPrimitiveToMillis(JsonPrimitive maybeDate) {
+    if (maybeDate.isNumber()) {
+      return maybeDate.getAsLong();
+    } else if (maybeDate.isString()) {
+      String s = maybeDate.getAsString();
+      long millis = parseRfc3339(s);
+      if (millis != INVALID_TIMESTAMP) {
+        return millis;
+      }
+      DateTime dateTime = jsonPrimitiveToDateTime(maybeDate);
+      return dateTime == null ? INVALID_TIMESTAMP : dateTime.getMillis();
+    } else {
+      return INVALID_TIMESTAMP;
+    }
+  }
+
+  // Returns INVALID_TIMESTAMP for anything outside the common RFC3339 shape, which the caller then gives to Joda
+  private static long parseRfc3339(String s) {
+    int n = s.length();
+    if (n < 19 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+        || s.charAt(13) != ':' || s.charAt(16) != ':') {
+      return INVALID_TIMESTAMP;
+    }
+    int year = digits(s, 0, 4);
+    int month = digits(s, 5, 2);
+    int day = digits(s, 8, 2);
+    int hour = digits(s, 11, 2);
+    int minute = digits(s, 14, 2);
+    int second = digits(s, 17, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return INVALID_TIMESTAMP;
+    }
+    int pos = 19;
+    int millis = 0;
+    if (pos < n && s.charAt(pos) == '.') {
+      pos++;
+      int start = pos;
+      while (pos < n && isDigit(s.charAt(pos))) {
+        // Digits beyond milliseconds are truncated, as Joda does
+        if (pos - start < 3) {
+          millis = millis * 10 + (s.charAt(pos) - '0');
+        }
+        pos++;
+      }
+      int fractionDigits = pos - start;
+      if (fractionDigits == 0) {
+        return INVALID_TIMESTAMP;
+      }
+      for (int i = fractionDigits; i < 3; i++) {
+        millis *= 10;
+      }
+    }
+    int offsetMinutes = 0;
+    if (pos < n) {
+      char c = s.charAt(pos);
+      if (c == 'Z' && pos + 1 == n) {
+        pos++;
+      } else if ((c == '+' || c == '-') && pos + 6 == n && s.charAt(pos + 3) == ':') {
+        int offsetHours = digits(s, pos + 1, 2);
+        int offsetMins = digits(s, pos + 4, 2);
+        if (offsetHours < 0 || offsetHours > 23 || offsetMins < 0 || offsetMins > 59) {
+          return INVALID_TIMESTAMP;
+        }
+        offsetMinutes = (offsetHours * 60 + offsetMins) * (c == '-' ? -1 : 1);
+        pos += 6;
+      } else {
+        return INVALID_TIMESTAMP;
+      }
+    }
+    long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second
+        - offsetMinutes * 60L;
+    return seconds * 1000L + millis;
+  }
+
+  private static int digits(String s, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = s.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return leap ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  // Days since 1970-01-01 in the proleptic Gregorian calendar
+  private static long daysFromCivil(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
 }
@@ -1,9 +1,6 @@
 package com.launchdarkly.client;
 
 
-import com.google.gson.JsonElement;
-import org.apache.commons.codec.digest.DigestUtils;
-
 import java.util.List;
 
 /**
@@ -11,8 +8,6 @@ import java.util.List;
  * Invariant: one of the variation or rollout must be non-nil.
  */
 class VariationOrRollout {
-  private static final float long_scale = (float) 0xFFFFFFFFFFFFFFFL;
-
   private Integer variation;
   private Rollout rollout;
 
@@ -24,38 +19,12 @@ class VariationOrRollout {
     this.rollout = rollout;
   }
 
-  Integer variationIndexForUser(LDUser user, String key, String salt) {
-    if (variation != null) {
-      return variation;
-    } else if (rollout != null) {
-      String bucketBy = rollout.bucketBy == null ? "key" : rollout.bucketBy;
-      float bucket = bucketUser(user, key, bucketBy, salt);
-      float sum = 0F;
-      for (WeightedVariation wv : rollout.variations) {
-        sum += (float) wv.weight / 100000F;
-        if (bucket < sum) {
-          return wv.variation;
-        }
-      }
-    }
-    return null;
+  Integer getVariation() {
+    return variation;
   }
 
-  private float bucketUser(LDUser user, String key, String attr, String salt) {
-    JsonElement userValue = user.getValueForEvaluation(attr);
-    String idHash;
-    if (userValue != null) {
-      if (userValue.isJsonPrimitive() && userValue.getAsJsonPrimitive().isString()) {
-        idHash = userValue.getAsString();
-        if (user.getSecondary() != null) {
-          idHash = idHash + "." + user.getSecondary().getAsString();
-        }
-        String hash = DigestUtils.sha1Hex(key + "." + salt + "." + idHash).substring(0, 15);
-        long longVal = Long.parseLong(hash, 16);
-        return (float) longVal / long_scale;
-      }
-    }
-    return 0F;
+  Rollout getRollout() {
+    return rollout;
   }
 
   static class Rollout {
@@ -69,6 +38,14 @@ class VariationOrRollout {
       this.variations = variations;
       this.bucketBy = bucketBy;
     }
+
+    List<WeightedVariation> getVariations() {
+      return variations;
+    }
+
+    String getBucketBy() {
+      return bucketBy;
+    }
   }
 
   static class WeightedVariation {
@@ -82,5 +59,13 @@ class VariationOrRollout {
       this.variation = variation;
       this.weight = weight;
     }
+
+    int getVariation() {
+      return variation;
+    }
+
+    int getWeight() {
+      return weight;
+    }
   }
 }
@@ -0,0 +1,73 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AllFlagsEvaluatorTest {
+
+  private final LDUser user = new LDUser("userkey");
+
+  @Test
+  public void testParallelEvaluationMatchesSequential() {
+    InMemoryFeatureStore store = new InMemoryFeatureStore();
+    store.init(flags(AllFlagsEvaluator.PARALLEL_THRESHOLD + 500));
+    store.delete("flag7", 2);
+
+    AllFlagsEvaluator parallel = new AllFlagsEvaluator(store, 4);
+    AllFlagsEvaluator sequential = new AllFlagsEvaluator(store, 1);
+    try {
+      Map<String, JsonElement> expected = sequential.evaluate(user, null);
+      Assert.assertEquals(AllFlagsEvaluator.PARALLEL_THRESHOLD + 499, expected.size());
+      Assert.assertFalse(expected.containsKey("flag7"));
+      Assert.assertEquals(new JsonPrimitive("b"), expected.get("flag1"));
+      Assert.assertNull(expected.get("flag2"));
+      Assert.assertEquals(expected, parallel.evaluate(user, null));
+    } finally {
+      parallel.close();
+      sequential.close();
+    }
+  }
+
+  @Test
+  public void testEvaluationAfterCloseRunsOnCallingThread() {
+    InMemoryFeatureStore store = new InMemoryFeatureStore();
+    store.init(flags(AllFlagsEvaluator.PARALLEL_THRESHOLD));
+    AllFlagsEvaluator evaluator = new AllFlagsEvaluator(store, 4);
+    evaluator.evaluate(user, null);
+    evaluator.close();
+    Assert.assertEquals(AllFlagsEvaluator.PARALLEL_THRESHOLD, evaluator.evaluate(user, null).size());
+  }
+
+  @Test
+  public void testInvalidVariationIsLeftOut() {
+    InMemoryFeatureStore store = new InMemoryFeatureStore();
+    Map<String, FeatureFlag> flags = flags(2);
+    flags.put("bad", new FeatureFlagBuilder("bad").version(1).on(false).offVariation(5)
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("a"))).build());
+    store.init(flags);
+    Map<String, JsonElement> result = new AllFlagsEvaluator(store, 1).evaluate(user, null);
+    Assert.assertEquals(2, result.size());
+    Assert.assertFalse(result.containsKey("bad"));
+  }
+
+  // Odd flags serve "b"; even flags are off with no off variation, so they evaluate to null
+  private static Map<String, FeatureFlag> flags(int count) {
+    Map<String, FeatureFlag> flags = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      String key = "flag" + i;
+      flags.put(key, new FeatureFlagBuilder(key)
+          .version(1)
+          .on(i % 2 == 1)
+          .fallthrough(new VariationOrRollout(1, null))
+          .variations(Arrays.<JsonElement>asList(new JsonPrimitive("a"), new JsonPrimitive("b")))
+          .build());
+    }
+    return flags;
+  }
+}
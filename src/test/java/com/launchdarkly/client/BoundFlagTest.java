@@ -0,0 +1,162 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class BoundFlagTest {
+
+  private InMemoryFeatureStore store;
+
+  @Before
+  public void before() {
+    store = new InMemoryFeatureStore();
+  }
+
+  @Test
+  public void testBoundFlagFollowsUpdates() {
+    store.upsert("flag", constantFlag(1, 0));
+    BoundFlag<String> bound = BoundFlag.bind("flag", VariationType.String, "default", store, null);
+    Assert.assertEquals("a", bound.get());
+
+    store.upsert("flag", constantFlag(2, 1));
+    Assert.assertEquals("b", bound.get());
+
+    store.upsert("flag", new FeatureFlagBuilder("flag").version(3).on(false).variations(variations()).build());
+    Assert.assertEquals("default", bound.get());
+
+    store.delete("flag", 4);
+    Assert.assertEquals("default", bound.get());
+
+    store.upsert("flag", constantFlag(5, 0));
+    Assert.assertEquals("a", bound.get());
+
+    bound.close();
+    store.upsert("flag", constantFlag(6, 1));
+    Assert.assertEquals("a", bound.get());
+  }
+
+  @Test
+  public void testBoundFlagUsesDefaultWhenFlagBecomesUserDependent() {
+    store.upsert("flag", constantFlag(1, 0));
+    BoundFlag<String> bound = BoundFlag.bind("flag", VariationType.String, "default", store, null);
+    store.upsert("flag", targetedFlag(2));
+    Assert.assertEquals("default", bound.get());
+  }
+
+  @Test
+  public void testBoundFlagUsesDefaultForWrongType() {
+    store.upsert("flag", constantFlag(1, 0));
+    BoundFlag<Integer> bound = BoundFlag.bind("flag", VariationType.Integer, 7, store, null);
+    Assert.assertEquals(Integer.valueOf(7), bound.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUserDependentFlagCannotBeBound() {
+    store.upsert("flag", targetedFlag(1));
+    BoundFlag.bind("flag", VariationType.String, "default", store, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownFlagCannotBeBound() {
+    BoundFlag.bind("flag", VariationType.String, "default", store, null);
+  }
+
+  @Test
+  public void testBoundFlagFollowsUpdatesToStoreThatDoesNotReportChanges() throws IOException {
+    FeatureStoreListeners updates = new FeatureStoreListeners();
+    store.upsert("flag", constantFlag(1, 0));
+    BoundFlag<String> bound = BoundFlag.bind("flag", VariationType.String, "default", new UnobservedStore(store), updates);
+    Assert.assertEquals("a", bound.get());
+
+    store.upsert("flag", constantFlag(2, 1));
+    Assert.assertEquals("a", bound.get());
+    updates.storeChanged();
+    Assert.assertEquals("b", bound.get());
+
+    bound.close();
+    store.upsert("flag", constantFlag(3, 0));
+    updates.storeChanged();
+    Assert.assertEquals("b", bound.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testStoreThatDoesNotReportChangesNeedsUpdates() {
+    store.upsert("flag", constantFlag(1, 0));
+    BoundFlag.bind("flag", VariationType.String, "default", new UnobservedStore(store), null);
+  }
+
+  private static FeatureFlag constantFlag(int version, int variation) {
+    return new FeatureFlagBuilder("flag")
+        .version(version)
+        .on(true)
+        .fallthrough(new VariationOrRollout(variation, null))
+        .variations(variations())
+        .build();
+  }
+
+  private static FeatureFlag targetedFlag(int version) {
+    return new FeatureFlagBuilder("flag")
+        .version(version)
+        .on(true)
+        .targets(Collections.singletonList(new Target(Collections.singletonList("user"), 1)))
+        .fallthrough(new VariationOrRollout(0, null))
+        .variations(variations())
+        .build();
+  }
+
+  private static List<JsonElement> variations() {
+    return Arrays.<JsonElement>asList(new JsonPrimitive("a"), new JsonPrimitive("b"));
+  }
+
+  private static class UnobservedStore implements FeatureStore {
+    private final FeatureStore store;
+
+    UnobservedStore(FeatureStore store) {
+      this.store = store;
+    }
+
+    @Override
+    public FeatureFlag get(String key) {
+      return store.get(key);
+    }
+
+    @Override
+    public Map<String, FeatureFlag> all() {
+      return store.all();
+    }
+
+    @Override
+    public void init(Map<String, FeatureFlag> features) {
+      store.init(features);
+    }
+
+    @Override
+    public void delete(String key, int version) {
+      store.delete(key, version);
+    }
+
+    @Override
+    public void upsert(String key, FeatureFlag feature) {
+      store.upsert(key, feature);
+    }
+
+    @Override
+    public boolean initialized() {
+      return store.initialized();
+    }
+
+    @Override
+    public void close() throws IOException {
+      store.close();
+    }
+  }
+}
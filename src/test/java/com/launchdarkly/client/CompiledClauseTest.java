@@ -0,0 +1,77 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CompiledClauseTest {
+
+  private static final List<JsonPrimitive> SAMPLE_VALUES = Arrays.asList(
+      new JsonPrimitive("a"),
+      new JsonPrimitive("99"),
+      new JsonPrimitive(99),
+      new JsonPrimitive(99.0),
+      new JsonPrimitive(99.5),
+      new JsonPrimitive(-0.0),
+      new JsonPrimitive(0),
+      new JsonPrimitive(-3),
+      new JsonPrimitive(true),
+      new JsonPrimitive(false),
+      new JsonPrimitive("2016-04-16T17:09:12.759-07:00"),
+      new JsonPrimitive("2016-04-17T00:09:12.760Z"),
+      new JsonPrimitive(1460851752759L),
+      new JsonPrimitive("not a date"));
+
+  @Test
+  public void testCompiledOperatorsAgreeWithOperatorApply() {
+    Operator[] ops = {Operator.in, Operator.lessThan, Operator.lessThanOrEqual, Operator.greaterThan, Operator.greaterThanOrEqual,
+        Operator.before, Operator.after};
+    for (Operator op : ops) {
+      for (int i = 0; i < SAMPLE_VALUES.size(); i++) {
+        List<JsonPrimitive> clauseValues = SAMPLE_VALUES.subList(i, Math.min(SAMPLE_VALUES.size(), i + 3));
+        CompiledClause clause = new CompiledClause(new Clause("attr", op, clauseValues, false), "flag");
+        for (JsonPrimitive userValue : SAMPLE_VALUES) {
+          boolean expected = false;
+          for (JsonPrimitive c : clauseValues) {
+            expected |= op.apply(userValue, c);
+          }
+          LDUser user = userWith(userValue);
+          Assert.assertEquals(op + " " + userValue + " " + clauseValues, expected, clause.matchesUser(user));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInMatchesAnyElementOfArrayAttribute() {
+    CompiledClause clause = new CompiledClause(new Clause("groups", Operator.in,
+        Arrays.asList(new JsonPrimitive("admins"), new JsonPrimitive("beta")), false), "flag");
+    LDUser member = new LDUser.Builder("key").customString("groups", Arrays.asList("users", "beta")).build();
+    LDUser other = new LDUser.Builder("key").customString("groups", Arrays.asList("users")).build();
+    Assert.assertTrue(clause.matchesUser(member));
+    Assert.assertFalse(clause.matchesUser(other));
+  }
+
+  @Test
+  public void testUnknownOperatorNeverMatches() {
+    LDUser user = userWith(new JsonPrimitive("a"));
+    List<JsonPrimitive> values = Arrays.asList(new JsonPrimitive("a"));
+    Assert.assertFalse(new CompiledClause(new Clause("attr", null, values, false), "flag").matchesUser(user));
+    Assert.assertFalse(new CompiledClause(new Clause("attr", null, values, true), "flag").matchesUser(user));
+  }
+
+  private static LDUser userWith(JsonPrimitive value) {
+    LDUser.Builder builder = new LDUser.Builder("key");
+    if (value.isString()) {
+      builder.custom("attr", value.getAsString());
+    } else if (value.isNumber()) {
+      builder.custom("attr", value.getAsNumber());
+    } else {
+      builder.custom("attr", value.getAsBoolean());
+    }
+    return builder.build();
+  }
+}
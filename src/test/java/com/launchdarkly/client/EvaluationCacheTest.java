@@ -0,0 +1,90 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class EvaluationCacheTest {
+
+  private final LDUser user = new LDUser("userkey");
+  private InMemoryFeatureStore store;
+  private EvaluationCache cache;
+
+  @Before
+  public void before() {
+    store = new InMemoryFeatureStore();
+    cache = new EvaluationCache(100);
+  }
+
+  @Test
+  public void testResultIsReusedUntilFlagVersionChanges() throws EvaluationException {
+    store.upsert("flag", flag("flag", 1, 0));
+    evaluate("flag");
+    Assert.assertNotNull(cache.get(user, store.get("flag"), store));
+    Assert.assertNull(cache.get(new LDUser("other"), store.get("flag"), store));
+
+    store.upsert("flag", flag("flag", 2, 1));
+    Assert.assertNull(cache.get(user, store.get("flag"), store));
+    Assert.assertEquals(1, cache.stats().hitCount());
+    Assert.assertEquals(2, cache.stats().missCount());
+  }
+
+  @Test
+  public void testResultIsInvalidatedByPrerequisiteChanges() throws EvaluationException {
+    store.upsert("prereq", flag("prereq", 1, 0));
+    store.upsert("flag", new FeatureFlagBuilder("flag")
+        .version(1)
+        .on(true)
+        .prerequisites(Arrays.asList(new Prerequisite("prereq", 0), new Prerequisite("missing", 0)))
+        .fallthrough(new VariationOrRollout(0, null))
+        .offVariation(1)
+        .variations(variations())
+        .build());
+
+    List<FeatureRequestEvent> events = evaluate("flag");
+    EvaluationCache.Entry entry = cache.get(user, store.get("flag"), store);
+    Assert.assertNotNull(entry);
+    Assert.assertEquals(new JsonPrimitive("b"), entry.getResult().jsonValue());
+    Assert.assertEquals(events.size(), entry.prerequisiteEvents(user).size());
+
+    store.upsert("missing", flag("missing", 1, 0));
+    Assert.assertNull(cache.get(user, store.get("flag"), store));
+
+    evaluate("flag");
+    store.upsert("prereq", flag("prereq", 2, 1));
+    Assert.assertNull(cache.get(user, store.get("flag"), store));
+
+    evaluate("flag");
+    store.delete("prereq", 3);
+    Assert.assertNull(cache.get(user, store.get("flag"), store));
+  }
+
+  private List<FeatureRequestEvent> evaluate(String key) throws EvaluationException {
+    FeatureFlag flag = store.get(key);
+    List<FeatureRequestEvent> events = new ArrayList<>();
+    CompiledFlag.Variation result = flag.getCompiled().evaluateVariation(user, store, events);
+    cache.put(user, flag, store, result, events);
+    return events;
+  }
+
+  private static FeatureFlag flag(String key, int version, int variation) {
+    return new FeatureFlagBuilder(key)
+        .version(version)
+        .on(true)
+        .targets(Collections.<Target>emptyList())
+        .fallthrough(new VariationOrRollout(variation, null))
+        .variations(variations())
+        .build();
+  }
+
+  private static List<JsonElement> variations() {
+    return Arrays.<JsonElement>asList(new JsonPrimitive("a"), new JsonPrimitive("b"));
+  }
+}
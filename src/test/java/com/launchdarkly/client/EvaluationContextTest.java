@@ -0,0 +1,45 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class EvaluationContextTest {
+
+  @Test
+  public void testContextGivesSameResultsAsDirectEvaluation() throws EvaluationException {
+    InMemoryFeatureStore store = new InMemoryFeatureStore();
+    VariationOrRollout.Rollout rollout = new VariationOrRollout.Rollout(Arrays.asList(
+        new VariationOrRollout.WeightedVariation(0, 30000),
+        new VariationOrRollout.WeightedVariation(1, 70000)), null);
+    Rule rule = new Rule(Collections.singletonList(
+        new Clause("email", Operator.endsWith, Collections.<JsonPrimitive>singletonList(new JsonPrimitive("@example.com")), false)),
+        null, rollout);
+    FeatureFlag flag = new FeatureFlagBuilder("flag")
+        .version(1)
+        .on(true)
+        .salt("salt")
+        .rules(Collections.singletonList(rule))
+        .fallthrough(new VariationOrRollout(null, rollout))
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("a"), new JsonPrimitive("b")))
+        .build();
+    store.upsert("flag", flag);
+    CompiledFlag compiled = store.get("flag").getCompiled();
+
+    for (int i = 0; i < 200; i++) {
+      LDUser user = new LDUser.Builder("user" + i)
+          .secondary(i % 3 == 0 ? "s" + i : null)
+          .email(i % 2 == 0 ? "u" + i + "@example.com" : null)
+          .build();
+      EvaluationContext context = new EvaluationContext(null, user);
+      JsonElement expected = compiled.evaluate(user, store, null);
+      Assert.assertEquals(expected, compiled.evaluateVariation(user, context, store, null).jsonValue());
+      // Evaluating again reuses the memoized bucket
+      Assert.assertEquals(expected, compiled.evaluateVariation(user, context, store, null).jsonValue());
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonPrimitive;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventProcessorTest {
+
+  @Test
+  public void testEventsBodyIsGzippedJson() throws Exception {
+    LDConfig config = LDConfig.DEFAULT;
+    List<Event> events = new ArrayList<>();
+    events.add(new FeatureRequestEvent("flag", new LDUser("userkey"), new JsonPrimitive(true), null, 1, null));
+    events.add(new CustomEvent("custom", new LDUser("userkey"), null));
+
+    Buffer sink = new Buffer();
+    new EventProcessor.GzipEventsBody(config.gson, events).writeTo(sink);
+
+    String json = Okio.buffer(new GzipSource(sink)).readUtf8();
+    Assert.assertEquals(config.gson.toJson(events), json);
+  }
+}
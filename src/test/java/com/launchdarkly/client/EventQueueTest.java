@@ -0,0 +1,89 @@
+package com.launchdarkly.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class EventQueueTest {
+
+  @Test
+  public void testOfferFailsWhenFull() {
+    EventQueue<Integer> queue = new EventQueue<>(4);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(queue.offer(i));
+    }
+    Assert.assertFalse(queue.offer(4));
+    Assert.assertEquals(4, queue.size());
+  }
+
+  @Test
+  public void testCapacityIsNotRoundedUp() {
+    EventQueue<Integer> queue = new EventQueue<>(5);
+    for (int i = 0; i < 5; i++) {
+      Assert.assertTrue(queue.offer(i));
+    }
+    Assert.assertFalse(queue.offer(5));
+    Assert.assertEquals(5, queue.drainTo(new ArrayList<Integer>()));
+    Assert.assertTrue(queue.offer(6));
+  }
+
+  @Test
+  public void testOutOfRangeCapacityIsClamped() {
+    EventQueue<Integer> queue = new EventQueue<>(0);
+    Assert.assertTrue(queue.offer(0));
+    Assert.assertFalse(queue.offer(1));
+  }
+
+  @Test
+  public void testDrainPreservesOrderAcrossLaps() {
+    EventQueue<Integer> queue = new EventQueue<>(4);
+    List<Integer> out = new ArrayList<>();
+    for (int lap = 0; lap < 3; lap++) {
+      for (int i = 0; i < 3; i++) {
+        Assert.assertTrue(queue.offer(lap * 3 + i));
+      }
+      Assert.assertEquals(3, queue.drainTo(out));
+    }
+    for (int i = 0; i < 9; i++) {
+      Assert.assertEquals(Integer.valueOf(i), out.get(i));
+    }
+    Assert.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testConcurrentProducersLoseNothing() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 10000;
+    final EventQueue<Integer> queue = new EventQueue<>(1024);
+    final Set<Integer> received = new HashSet<>();
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int base = p * perProducer;
+      threads[p] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < perProducer; i++) {
+            while (!queue.offer(base + i)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      threads[p].start();
+    }
+    List<Integer> batch = new ArrayList<>();
+    while (received.size() < producers * perProducer) {
+      batch.clear();
+      queue.drainTo(batch);
+      received.addAll(batch);
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    Assert.assertEquals(producers * perProducer, received.size());
+  }
+}
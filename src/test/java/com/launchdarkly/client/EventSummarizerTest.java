@@ -0,0 +1,132 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventSummarizerTest {
+
+  private final LDUser user = new LDUser("userkey");
+
+  @Test
+  public void testCountsEvaluationsByFlagVersionAndValue() {
+    EventSummarizer summarizer = new EventSummarizer(100);
+    JsonPrimitive def = new JsonPrimitive("default");
+    summarizer.summarize(new FeatureRequestEvent("flag", user, new JsonPrimitive("a"), def, 1, null));
+    summarizer.summarize(new FeatureRequestEvent("flag", user, new JsonPrimitive("a"), def, 1, null));
+    summarizer.summarize(new FeatureRequestEvent("flag", user, new JsonPrimitive("b"), def, 1, null));
+    summarizer.summarize(new FeatureRequestEvent("missing", user, def, def, null, null));
+
+    SummaryEvent summary = summarizer.flush();
+    Assert.assertNotNull(summary);
+    Assert.assertEquals(2, summary.features.size());
+
+    SummaryEvent.FlagSummary flag = summary.features.get("flag");
+    Assert.assertEquals(def, flag.defaultVal);
+    Assert.assertEquals(2, flag.counters.size());
+    long total = 0;
+    for (SummaryEvent.Counter c : flag.counters) {
+      Assert.assertEquals(Integer.valueOf(1), c.version);
+      Assert.assertNull(c.unknown);
+      if (c.value.equals(new JsonPrimitive("a"))) {
+        Assert.assertEquals(2, c.count);
+      }
+      total += c.count;
+    }
+    Assert.assertEquals(3, total);
+
+    SummaryEvent.Counter unknown = summary.features.get("missing").counters.get(0);
+    Assert.assertEquals(Boolean.TRUE, unknown.unknown);
+    Assert.assertEquals(1, unknown.count);
+  }
+
+  @Test
+  public void testFlushStartsNewInterval() {
+    EventSummarizer summarizer = new EventSummarizer(100);
+    summarizer.summarize(new FeatureRequestEvent("flag", user, new JsonPrimitive(true), null, 1, null));
+    Assert.assertNotNull(summarizer.flush());
+    Assert.assertNull(summarizer.flush());
+  }
+
+  @Test
+  public void testUsersAreReportedOncePerInterval() {
+    EventSummarizer summarizer = new EventSummarizer(100);
+    Assert.assertTrue(summarizer.noticeUser(user));
+    Assert.assertFalse(summarizer.noticeUser(user));
+    Assert.assertTrue(summarizer.noticeUser(new LDUser("other")));
+    summarizer.flush();
+    Assert.assertTrue(summarizer.noticeUser(user));
+  }
+
+  @Test
+  public void testDirectCountsMatchEventCounts() {
+    EventSummarizer summarizer = new EventSummarizer(100);
+    JsonPrimitive def = new JsonPrimitive("default");
+    summarizer.countEvaluation("flag", 1, new JsonPrimitive("a"), def);
+    summarizer.countEvaluation("flag", 1, new JsonPrimitive("a"), def);
+    summarizer.summarize(new FeatureRequestEvent("flag", user, new JsonPrimitive("a"), def, 1, null));
+    summarizer.countDefault("missing", def);
+
+    SummaryEvent summary = summarizer.flush();
+    SummaryEvent.Counter counter = summary.features.get("flag").counters.get(0);
+    Assert.assertEquals(3, counter.count);
+    Assert.assertEquals(def, summary.features.get("flag").defaultVal);
+    Assert.assertEquals(Boolean.TRUE, summary.features.get("missing").counters.get(0).unknown);
+  }
+
+  @Test
+  public void testLeastRecentlySeenUsersAreForgottenFirst() {
+    EventSummarizer summarizer = new EventSummarizer(2);
+    LDUser a = new LDUser("a");
+    LDUser b = new LDUser("b");
+    Assert.assertTrue(summarizer.noticeUser(a));
+    Assert.assertTrue(summarizer.noticeUser(b));
+    Assert.assertFalse(summarizer.noticeUser(a));
+    Assert.assertTrue(summarizer.noticeUser(new LDUser("c")));
+
+    // Still remembered, rather than every user being reported once the capacity is reached
+    Assert.assertFalse(summarizer.noticeUser(a));
+    Assert.assertTrue(summarizer.noticeUser(b));
+  }
+
+  @Test
+  public void testConcurrentFlushesLoseNoCounts() throws InterruptedException {
+    final EventSummarizer summarizer = new EventSummarizer(100);
+    final int threads = 4;
+    final int perThread = 50000;
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final JsonPrimitive value = new JsonPrimitive(t % 2 == 0);
+      workers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < perThread; i++) {
+            summarizer.countEvaluation("flag", 1, value, null);
+          }
+        }
+      });
+      workers[t].start();
+    }
+    long total = 0;
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (Thread w : workers) {
+        running |= w.isAlive();
+      }
+      total += sum(summarizer.flush());
+    }
+    total += sum(summarizer.flush());
+    Assert.assertEquals(threads * perThread, total);
+  }
+
+  private static long sum(SummaryEvent summary) {
+    long total = 0;
+    if (summary != null) {
+      for (SummaryEvent.Counter c : summary.features.get("flag").counters) {
+        total += c.count;
+      }
+    }
+    return total;
+  }
+}
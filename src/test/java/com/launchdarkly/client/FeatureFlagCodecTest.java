@@ -0,0 +1,84 @@
+package com.launchdarkly.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FeatureFlagCodecTest {
+
+  // Gson without custom adapters, as flags were written before the codec existed
+  private final Gson reflectiveGson = new Gson();
+
+  @Test
+  public void testJsonMatchesReflectiveSerialization() {
+    FeatureFlag flag = fullFlag();
+    JsonElement expected = reflectiveGson.toJsonTree(flag);
+    Assert.assertEquals(expected, new JsonParser().parse(new String(FeatureFlagCodec.JSON.encode(flag), Charset.forName("UTF-8"))));
+    Assert.assertEquals(expected, reflectiveGson.toJsonTree(FeatureFlagCodec.decode(reflectiveGson.toJson(flag).getBytes(Charset.forName("UTF-8")))));
+  }
+
+  @Test
+  public void testBinaryRoundTrip() {
+    FeatureFlag flag = fullFlag();
+    for (FeatureFlagCodec codec : Arrays.asList(FeatureFlagCodec.BINARY, FeatureFlagCodec.COMPRESSED_BINARY)) {
+      byte[] data = codec.encode(flag);
+      Assert.assertEquals(reflectiveGson.toJsonTree(flag), reflectiveGson.toJsonTree(FeatureFlagCodec.decode(data)));
+      Assert.assertEquals(3, FeatureFlagCodec.readVersion(data));
+    }
+  }
+
+  @Test
+  public void testMinimalFlagRoundTrip() {
+    FeatureFlag flag = new FeatureFlagBuilder("key").version(1).deleted(true).build();
+    JsonElement expected = reflectiveGson.toJsonTree(flag);
+    Assert.assertEquals(expected, reflectiveGson.toJsonTree(FeatureFlagCodec.decode(FeatureFlagCodec.JSON.encode(flag))));
+    Assert.assertEquals(expected, reflectiveGson.toJsonTree(FeatureFlagCodec.decode(FeatureFlagCodec.BINARY.encode(flag))));
+    Assert.assertEquals(1, FeatureFlagCodec.readVersion(FeatureFlagCodec.JSON.encode(flag)));
+  }
+
+  @Test
+  public void testDecodedNumbersBehaveLikeParsedJson() {
+    JsonArray numbers = new JsonArray();
+    numbers.add(new JsonPrimitive(3));
+    numbers.add(new JsonPrimitive(2.5));
+    FeatureFlag flag = new FeatureFlagBuilder("key").version(1).variations(Arrays.<JsonElement>asList(numbers)).build();
+    JsonElement fromJson = FeatureFlagCodec.decode(FeatureFlagCodec.JSON.encode(flag)).getVariations().get(0);
+    JsonElement fromBinary = FeatureFlagCodec.decode(FeatureFlagCodec.BINARY.encode(flag)).getVariations().get(0);
+    Assert.assertEquals(fromJson, fromBinary);
+    Assert.assertEquals(fromJson.hashCode(), fromBinary.hashCode());
+  }
+
+  private static FeatureFlag fullFlag() {
+    JsonObject objectValue = new JsonObject();
+    objectValue.addProperty("name", "value");
+    objectValue.add("nothing", JsonNull.INSTANCE);
+    objectValue.addProperty("big", 12345678901234L);
+    Rule rule = new Rule(Collections.singletonList(
+        new Clause("email", Operator.in, Arrays.asList(new JsonPrimitive("a@b.com"), new JsonPrimitive(4), new JsonPrimitive(true)), true)),
+        null,
+        new VariationOrRollout.Rollout(Arrays.asList(
+            new VariationOrRollout.WeightedVariation(0, 40000),
+            new VariationOrRollout.WeightedVariation(1, 60000)), "country"));
+    return new FeatureFlagBuilder("flag-\u00e9")
+        .version(3)
+        .on(true)
+        .prerequisites(Collections.singletonList(new Prerequisite("other", 1)))
+        .salt("salty")
+        .targets(Collections.singletonList(new Target(Arrays.asList("user1", "user2"), 2)))
+        .rules(Collections.singletonList(rule))
+        .fallthrough(new VariationOrRollout(1, null))
+        .offVariation(0)
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("x"), new JsonPrimitive(1.5), objectValue))
+        .build();
+  }
+}
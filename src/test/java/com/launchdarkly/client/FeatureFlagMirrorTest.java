@@ -0,0 +1,192 @@
+package com.launchdarkly.client;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FeatureFlagMirrorTest {
+
+  private FakeSource source;
+  private FeatureFlagMirror mirror;
+
+  @Before
+  public void before() {
+    source = new FakeSource();
+    mirror = new FeatureFlagMirror(source);
+  }
+
+  @Test
+  public void testFirstRefreshLoadsEverything() {
+    source.store(new FeatureFlagBuilder("a").version(1).build());
+    source.store(new FeatureFlagBuilder("b").version(1).deleted(true).build());
+    Assert.assertFalse(mirror.isLoaded());
+
+    mirror.refresh();
+
+    Assert.assertTrue(mirror.isLoaded());
+    Assert.assertEquals(1, source.fullReads);
+    Assert.assertNotNull(mirror.get("a"));
+    Assert.assertNull(mirror.get("b"));
+    Assert.assertEquals(1, mirror.all().size());
+  }
+
+  @Test
+  public void testRefreshFetchesOnlyChangedFlags() {
+    source.store(new FeatureFlagBuilder("a").version(1).build());
+    source.store(new FeatureFlagBuilder("b").version(1).build());
+    source.store(new FeatureFlagBuilder("c").version(1).build());
+    mirror.refresh();
+    FeatureFlag a = mirror.get("a");
+
+    source.store(new FeatureFlagBuilder("b").version(2).build());
+    source.flags.remove("c");
+    source.store(new FeatureFlagBuilder("d").version(1).build());
+    mirror.refresh();
+
+    Assert.assertEquals(1, source.fullReads);
+    Assert.assertEquals(2, source.fetched.size());
+    Assert.assertTrue(source.fetched.contains("b"));
+    Assert.assertTrue(source.fetched.contains("d"));
+    Assert.assertSame(a, mirror.get("a"));
+    Assert.assertEquals(2, mirror.get("b").getVersion());
+    Assert.assertNull(mirror.get("c"));
+    Assert.assertEquals(3, mirror.all().size());
+  }
+
+  @Test
+  public void testUnknownVersionsCauseFullReload() {
+    source.store(new FeatureFlagBuilder("a").version(1).build());
+    mirror.refresh();
+    source.versionsKnown = false;
+    mirror.refresh();
+
+    Assert.assertEquals(2, source.fullReads);
+  }
+
+  @Test
+  public void testPeriodicFullReloadCatchesStaleVersions() {
+    source.store(new FeatureFlagBuilder("a").version(1).build());
+    mirror.refresh();
+    // Stored without its version being recorded, as an older SDK would
+    source.store(new FeatureFlagBuilder("a").version(2).build());
+    source.staleVersions.put("a", 1);
+
+    for (int i = 1; i < FeatureFlagMirror.FULL_RELOAD_EVERY; i++) {
+      mirror.refresh();
+    }
+    Assert.assertEquals(1, mirror.get("a").getVersion());
+    Assert.assertEquals(1, source.fullReads);
+
+    mirror.refresh();
+    Assert.assertEquals(2, mirror.get("a").getVersion());
+    Assert.assertEquals(2, source.fullReads);
+  }
+
+  @Test
+  public void testRefreshKeysFetchesOnlyThoseKeys() {
+    source.store(new FeatureFlagBuilder("a").version(1).build());
+    source.store(new FeatureFlagBuilder("b").version(1).build());
+    mirror.refresh();
+
+    source.store(new FeatureFlagBuilder("a").version(2).build());
+    source.flags.remove("b");
+    mirror.refresh(Arrays.asList("b"));
+
+    Assert.assertEquals(Arrays.asList("b"), source.fetched);
+    Assert.assertEquals(1, mirror.get("a").getVersion());
+    Assert.assertNull(mirror.get("b"));
+  }
+
+  @Test
+  public void testPutKeepsNewerVersion() {
+    source.store(new FeatureFlagBuilder("a").version(2).build());
+    mirror.refresh();
+
+    mirror.put(new FeatureFlagBuilder("a").version(1).deleted(true).build());
+    Assert.assertEquals(2, mirror.get("a").getVersion());
+
+    mirror.put(new FeatureFlagBuilder("a").version(3).deleted(true).build());
+    Assert.assertNull(mirror.get("a"));
+    Assert.assertTrue(mirror.all().isEmpty());
+  }
+
+  @Test
+  public void testPrerequisitesAreLinkedAndRelinked() {
+    source.store(new FeatureFlagBuilder("a").version(1).on(true)
+        .prerequisites(Arrays.asList(new Prerequisite("b", 0))).build());
+    source.store(new FeatureFlagBuilder("b").version(1).build());
+    mirror.refresh();
+    assertLinked(mirror.get("a"), mirror.get("b"));
+
+    source.store(new FeatureFlagBuilder("b").version(2).build());
+    mirror.refresh(Arrays.asList("b"));
+    assertLinked(mirror.get("a"), mirror.get("b"));
+
+    mirror.put(new FeatureFlagBuilder("b").version(3).build());
+    assertLinked(mirror.get("a"), mirror.get("b"));
+
+    source.flags.remove("b");
+    mirror.refresh();
+    assertLinked(mirror.get("a"), null);
+  }
+
+  private static void assertLinked(FeatureFlag flag, FeatureFlag prerequisite) {
+    CompiledFlag[] targets = { prerequisite == null ? null : prerequisite.getCompiled() };
+    Assert.assertTrue(flag.getCompiled().isLinkedTo(targets, new boolean[] { false }));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReadBeforeLoadFails() {
+    mirror.all();
+  }
+
+  static class FakeSource implements FeatureFlagMirror.Source {
+    final Map<String, FeatureFlag> flags = new HashMap<>();
+    final List<String> fetched = new ArrayList<>();
+    final Map<String, Integer> staleVersions = new HashMap<>();
+    boolean versionsKnown = true;
+    int fullReads;
+
+    void store(FeatureFlag flag) {
+      flags.put(flag.getKey(), flag);
+    }
+
+    @Override
+    public Map<String, Integer> versions() {
+      if (!versionsKnown) {
+        return null;
+      }
+      Map<String, Integer> versions = new HashMap<>();
+      for (FeatureFlag f : flags.values()) {
+        versions.put(f.getKey(), f.getVersion());
+      }
+      versions.putAll(staleVersions);
+      return versions;
+    }
+
+    @Override
+    public Map<String, FeatureFlag> get(Collection<String> keys) {
+      Map<String, FeatureFlag> result = new HashMap<>();
+      for (String key : keys) {
+        fetched.add(key);
+        if (flags.containsKey(key)) {
+          result.put(key, flags.get(key));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public Map<String, FeatureFlag> all() {
+      fullReads++;
+      return new HashMap<>(flags);
+    }
+  }
+}
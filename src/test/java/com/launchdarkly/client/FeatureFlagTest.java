@@ -66,6 +66,127 @@ public class FeatureFlagTest {
     Assert.assertEquals(0, flagCResult.getPrerequisiteEvents().size());
   }
 
+  @Test
+  public void testFlagReturnsOffVariationIfFlagIsOff() throws EvaluationException {
+    FeatureFlag f = new FeatureFlagBuilder("feature")
+        .on(false)
+        .offVariation(1)
+        .fallthrough(new VariationOrRollout(0, null))
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("fall"), new JsonPrimitive("off")))
+        .build();
+    featureStore.upsert(f.getKey(), f);
+
+    FeatureFlag.EvalResult result = f.evaluate(new LDUser("x"), featureStore);
+    Assert.assertEquals(new JsonPrimitive("off"), result.getValue());
+  }
+
+  @Test(expected = EvaluationException.class)
+  public void testInvalidOffVariationIsReportedWhenEvaluated() throws EvaluationException {
+    FeatureFlag f = new FeatureFlagBuilder("feature")
+        .on(false)
+        .offVariation(2)
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("fall"), new JsonPrimitive("off")))
+        .build();
+    featureStore.upsert(f.getKey(), f);
+
+    f.evaluate(new LDUser("x"), featureStore);
+  }
+
+  @Test
+  public void testFlagMatchesUserFromTargets() throws EvaluationException {
+    FeatureFlag f = new FeatureFlagBuilder("feature")
+        .on(true)
+        .targets(Arrays.asList(new Target(Arrays.asList("whoever", "userkey"), 2)))
+        .fallthrough(new VariationOrRollout(0, null))
+        .offVariation(1)
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("fall"), new JsonPrimitive("off"), new JsonPrimitive("on")))
+        .build();
+    featureStore.upsert(f.getKey(), f);
+
+    Assert.assertEquals(new JsonPrimitive("on"), f.evaluate(new LDUser("userkey"), featureStore).getValue());
+    Assert.assertEquals(new JsonPrimitive("fall"), f.evaluate(new LDUser("other"), featureStore).getValue());
+  }
+
+  @Test
+  public void testFlagMatchesUserFromRules() throws EvaluationException {
+    Clause clause = new Clause("key", Operator.in, Arrays.asList(new JsonPrimitive("userkey")), false);
+    Rule rule = new Rule(Arrays.asList(clause), 2, null);
+    FeatureFlag f = new FeatureFlagBuilder("feature")
+        .on(true)
+        .rules(Arrays.asList(rule))
+        .fallthrough(new VariationOrRollout(0, null))
+        .offVariation(1)
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("fall"), new JsonPrimitive("off"), new JsonPrimitive("on")))
+        .build();
+    featureStore.upsert(f.getKey(), f);
+
+    Assert.assertEquals(new JsonPrimitive("on"), f.evaluate(new LDUser("userkey"), featureStore).getValue());
+    Assert.assertEquals(new JsonPrimitive("fall"), f.evaluate(new LDUser("other"), featureStore).getValue());
+  }
+
+  @Test
+  public void testClauseWithUnknownOperatorDoesNotMatch() throws EvaluationException {
+    Clause clause = new Clause("key", null, Arrays.asList(new JsonPrimitive("userkey")), false);
+    Rule rule = new Rule(Arrays.asList(clause), 2, null);
+    FeatureFlag f = new FeatureFlagBuilder("feature")
+        .on(true)
+        .rules(Arrays.asList(rule))
+        .fallthrough(new VariationOrRollout(0, null))
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("fall"), new JsonPrimitive("off"), new JsonPrimitive("on")))
+        .build();
+    featureStore.upsert(f.getKey(), f);
+
+    Assert.assertEquals(new JsonPrimitive("fall"), f.evaluate(new LDUser("userkey"), featureStore).getValue());
+  }
+
+  @Test
+  public void testRegexClauseMatchesUser() throws EvaluationException {
+    Clause clause = new Clause("email", Operator.matches, Arrays.asList(new JsonPrimitive("[invalid"), new JsonPrimitive("@example\\.com$")), false);
+    Rule rule = new Rule(Arrays.asList(clause), 2, null);
+    FeatureFlag f = new FeatureFlagBuilder("feature")
+        .on(true)
+        .rules(Arrays.asList(rule))
+        .fallthrough(new VariationOrRollout(0, null))
+        .variations(Arrays.<JsonElement>asList(new JsonPrimitive("fall"), new JsonPrimitive("off"), new JsonPrimitive("on")))
+        .build();
+    featureStore.upsert(f.getKey(), f);
+
+    LDUser matching = new LDUser.Builder("a").email("someone@example.com").build();
+    LDUser other = new LDUser.Builder("b").email("someone@example.org").build();
+    Assert.assertEquals(new JsonPrimitive("on"), f.evaluate(matching, featureStore).getValue());
+    Assert.assertEquals(new JsonPrimitive("fall"), f.evaluate(other, featureStore).getValue());
+  }
+
+  @Test
+  public void testPrereqCycleFailsWithoutRecursing() throws EvaluationException {
+    FeatureFlag flagA = newFlagWithPrereq("keyA", "keyB");
+    FeatureFlag flagB = newFlagWithPrereq("keyB", "keyA");
+    featureStore.upsert(flagA.getKey(), flagA);
+    featureStore.upsert(flagB.getKey(), flagB);
+
+    LDUser user = new LDUser("userKey");
+    Assert.assertNull(flagA.evaluate(user, featureStore).getValue());
+    Assert.assertNull(flagB.evaluate(user, featureStore).getValue());
+  }
+
+  @Test
+  public void testPrereqLinkFollowsPrereqUpdates() throws EvaluationException {
+    FeatureFlag flagA = newFlagWithPrereq("keyA", "keyB");
+    FeatureFlag flagB = newFlagOff("keyB");
+    featureStore.upsert(flagA.getKey(), flagA);
+    featureStore.upsert(flagB.getKey(), flagB);
+
+    LDUser user = new LDUser("userKey");
+    Assert.assertNull(flagA.evaluate(user, featureStore).getValue());
+
+    FeatureFlag flagB2 = new FeatureFlagBuilder(flagB).on(true).version(flagB.getVersion() + 1).build();
+    featureStore.upsert(flagB2.getKey(), flagB2);
+    Assert.assertEquals(new JsonPrimitive(0), flagA.evaluate(user, featureStore).getValue());
+
+    featureStore.delete(flagB.getKey(), flagB2.getVersion() + 1);
+    Assert.assertNull(flagA.evaluate(user, featureStore).getValue());
+  }
+
   private FeatureFlag newFlagWithPrereq(String featureKey, String prereqKey) {
     return new FeatureFlagBuilder(featureKey)
         .prerequisites(singletonList(new Prerequisite(prereqKey, 0)))
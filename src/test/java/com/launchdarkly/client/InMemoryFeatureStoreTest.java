@@ -0,0 +1,69 @@
+package com.launchdarkly.client;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class InMemoryFeatureStoreTest {
+
+  private InMemoryFeatureStore store;
+
+  @Before
+  public void before() {
+    store = new InMemoryFeatureStore();
+  }
+
+  @Test
+  public void testInitKeepsUnchangedFlags() {
+    FeatureFlag a = new FeatureFlagBuilder("a").version(1).build();
+    FeatureFlag b = new FeatureFlagBuilder("b").version(1).build();
+    store.init(flags(a, b));
+
+    FeatureFlag a2 = new FeatureFlagBuilder("a").version(1).build();
+    FeatureFlag b2 = new FeatureFlagBuilder("b").version(2).build();
+    store.init(flags(a2, b2));
+
+    Assert.assertSame(a, store.get("a"));
+    Assert.assertSame(b2, store.get("b"));
+  }
+
+  @Test
+  public void testInitRemovesMissingFlags() {
+    FeatureFlag a = new FeatureFlagBuilder("a").version(1).build();
+    FeatureFlag b = new FeatureFlagBuilder("b").version(1).build();
+    store.init(flags(a, b));
+    store.init(flags(a));
+
+    Assert.assertSame(a, store.get("a"));
+    Assert.assertNull(store.get("b"));
+    Assert.assertEquals(1, store.all().size());
+  }
+
+  @Test
+  public void testPrerequisiteChangeLeavesPublishedSnapshotAlone() {
+    FeatureFlag a = new FeatureFlagBuilder("a").version(1).on(true)
+        .prerequisites(Arrays.asList(new Prerequisite("b", 0))).build();
+    FeatureFlag b = new FeatureFlagBuilder("b").version(1).build();
+    store.init(flags(a, b));
+    Map<String, FeatureFlag> before = InMemoryFeatureStore.observableOf(store).snapshot();
+    CompiledFlag linkedBefore = before.get("a").getCompiled();
+
+    store.upsert("b", new FeatureFlagBuilder("b").version(2).build());
+
+    Assert.assertSame(linkedBefore, before.get("a").getCompiled());
+    Assert.assertNotSame(linkedBefore, InMemoryFeatureStore.observableOf(store).snapshot().get("a").getCompiled());
+    Assert.assertEquals(1, store.get("a").getVersion());
+  }
+
+  private static Map<String, FeatureFlag> flags(FeatureFlag... flags) {
+    Map<String, FeatureFlag> map = new HashMap<>();
+    for (FeatureFlag f : flags) {
+      map.put(f.getKey(), f);
+    }
+    return map;
+  }
+}
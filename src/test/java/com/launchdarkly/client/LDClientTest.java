@@ -192,6 +192,113 @@ public class LDClientTest extends EasyMockSupport {
     verifyAll();
   }
 
+  @Test
+  public void testTestFeatureStorePrimitiveNumericVariations() throws Exception {
+    TestFeatureStore testFeatureStore = new TestFeatureStore();
+    testFeatureStore.setInitialized(true);
+    LDConfig config = new LDConfig.Builder()
+            .startWaitMillis(10L)
+            .stream(false)
+            .featureStore(testFeatureStore)
+            .build();
+
+    expect(initFuture.get(10L, TimeUnit.MILLISECONDS)).andReturn(new Object());
+    expect(pollingProcessor.start()).andReturn(initFuture);
+    expect(pollingProcessor.initialized()).andReturn(true).times(3);
+    expect(eventProcessor.sendEvent(anyObject(Event.class))).andReturn(true).times(3);
+    replayAll();
+
+    client = createMockClient(config);
+
+    testFeatureStore.setIntegerValue("key", 42);
+    assertEquals(42, ((LDClient) client).primitiveIntVariation("key", new LDUser("user"), 1));
+    testFeatureStore.setDoubleValue("key", 2.5d);
+    assertEquals(2.5d, ((LDClient) client).primitiveDoubleVariation("key", new LDUser("user"), 1d), 0d);
+    testFeatureStore.setStringValue("key", "not a number");
+    assertEquals(7, ((LDClient) client).primitiveIntVariation("key", new LDUser("user"), 7));
+    verifyAll();
+  }
+
+  @Test
+  public void testFlagHandleFollowsStoreUpdates() throws Exception {
+    TestFeatureStore testFeatureStore = new TestFeatureStore();
+    testFeatureStore.setInitialized(true);
+    LDConfig config = new LDConfig.Builder()
+            .startWaitMillis(10L)
+            .stream(false)
+            .featureStore(testFeatureStore)
+            .build();
+
+    expect(initFuture.get(10L, TimeUnit.MILLISECONDS)).andReturn(new Object());
+    expect(pollingProcessor.start()).andReturn(initFuture);
+    expect(pollingProcessor.initialized()).andReturn(true).times(4);
+    expect(eventProcessor.sendEvent(anyObject(Event.class))).andReturn(true).times(4);
+    replayAll();
+
+    client = createMockClient(config);
+
+    FlagHandle handle = ((LDClient) client).flagHandle("key");
+    assertEquals(3, handle.intVariation(new LDUser("user"), 3));
+    testFeatureStore.setIntegerValue("key", 42);
+    assertEquals(42, handle.intVariation(new LDUser("user"), 1));
+    assertEquals(42, handle.intVariation(new LDUser("user"), 1));
+    testFeatureStore.setIntegerValue("key", 43);
+    assertEquals(43, handle.intVariation(new LDUser("user"), 1));
+    verifyAll();
+  }
+
+  @Test
+  public void testCachedEvaluationsStillSendEvents() throws Exception {
+    TestFeatureStore testFeatureStore = new TestFeatureStore();
+    testFeatureStore.setInitialized(true);
+    LDConfig config = new LDConfig.Builder()
+            .startWaitMillis(10L)
+            .stream(false)
+            .evaluationCacheSize(100)
+            .featureStore(testFeatureStore)
+            .build();
+
+    expect(initFuture.get(10L, TimeUnit.MILLISECONDS)).andReturn(new Object());
+    expect(pollingProcessor.start()).andReturn(initFuture);
+    expect(pollingProcessor.initialized()).andReturn(true).times(3);
+    expect(eventProcessor.sendEvent(anyObject(Event.class))).andReturn(true).times(3);
+    replayAll();
+
+    client = createMockClient(config);
+
+    testFeatureStore.setStringValue("key", "apples");
+    assertEquals("apples", client.stringVariation("key", new LDUser("user"), "oranges"));
+    assertEquals("apples", client.stringVariation("key", new LDUser("user"), "oranges"));
+    testFeatureStore.setStringValue("key", "bananas");
+    assertEquals("bananas", client.stringVariation("key", new LDUser("user"), "oranges"));
+    assertEquals(1, ((LDClient) client).getEvaluationCacheStats().hitCount());
+    verifyAll();
+  }
+
+  @Test
+  public void testNoEventsAreBuiltWhenSendEventsIsDisabled() throws Exception {
+    TestFeatureStore testFeatureStore = new TestFeatureStore();
+    testFeatureStore.setInitialized(true);
+    LDConfig config = new LDConfig.Builder()
+            .startWaitMillis(10L)
+            .stream(false)
+            .sendEvents(false)
+            .featureStore(testFeatureStore)
+            .build();
+
+    expect(initFuture.get(10L, TimeUnit.MILLISECONDS)).andReturn(new Object());
+    expect(pollingProcessor.start()).andReturn(initFuture);
+    expect(pollingProcessor.initialized()).andReturn(true).times(2);
+    replayAll();
+
+    client = createMockClient(config);
+
+    testFeatureStore.setIntegerValue("key", 42);
+    assertEquals(42, ((LDClient) client).primitiveIntVariation("key", new LDUser("user"), 1));
+    assertEquals(5, ((LDClient) client).primitiveIntVariation("unknown", new LDUser("user"), 5));
+    verifyAll();
+  }
+
   @Test
   public void testTestFeatureStoreStringVariation() throws Exception {
     TestFeatureStore testFeatureStore = new TestFeatureStore();
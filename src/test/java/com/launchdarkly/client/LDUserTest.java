@@ -200,4 +200,17 @@ public class LDUserTest {
     assertNull(privateJson.get("email"));
 
   }
+
+  @Test
+  public void testAttributeAccessorReadsBuiltInAndCustomAttributes() {
+    LDUser user = new LDUser.Builder("key")
+        .email("bob@example.com")
+        .custom("org", "LaunchDarkly")
+        .build();
+
+    assertEquals(new JsonPrimitive("bob@example.com"), AttributeAccessor.forName("email").get(user));
+    assertEquals(new JsonPrimitive("LaunchDarkly"), AttributeAccessor.forName("org").get(user));
+    assertNull(AttributeAccessor.forName("missing").get(user));
+    assertEquals(user.getValueForEvaluation("org"), AttributeAccessor.forName("org").get(user));
+  }
 }
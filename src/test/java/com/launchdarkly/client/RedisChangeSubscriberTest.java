@@ -0,0 +1,187 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RedisChangeSubscriberTest {
+  private static final byte[] CHANNEL = SafeEncoder.encode("changes");
+
+  @Test
+  public void testMessageRoundTrip() {
+    byte[] message = RedisChangeSubscriber.encode("sender", Arrays.asList("a", "b"));
+    List<String> keys = RedisChangeSubscriber.decode("receiver", message);
+    Assert.assertEquals(Arrays.asList("a", "b"), keys);
+  }
+
+  @Test
+  public void testOwnMessagesAreIgnored() {
+    byte[] message = RedisChangeSubscriber.encode("sender", Arrays.asList("a"));
+    Assert.assertNull(RedisChangeSubscriber.decode("sender", message));
+  }
+
+  @Test
+  public void testResyncOnlyAfterReconnecting() {
+    RecordingHandler handler = new RecordingHandler();
+    RedisChangeSubscriber subscriber = new RedisChangeSubscriber("changes", handler);
+
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    Assert.assertEquals(0, handler.resyncs);
+
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    Assert.assertEquals(1, handler.resyncs);
+    subscriber.close();
+  }
+
+  @Test
+  public void testMessagesFromOtherInstancesReachHandler() {
+    RecordingHandler handler = new RecordingHandler();
+    RedisChangeSubscriber subscriber = new RedisChangeSubscriber("changes", handler);
+
+    subscriber.pubSub.onMessage(CHANNEL, RedisChangeSubscriber.encode("other", Arrays.asList("a", "b")));
+
+    Assert.assertEquals(Arrays.asList("a", "b"), handler.changed);
+    subscriber.close();
+  }
+
+  @Test
+  public void testHandlerExceptionsDoNotEscape() {
+    RedisChangeSubscriber subscriber = new RedisChangeSubscriber("changes", new RedisChangeSubscriber.Handler() {
+      @Override
+      public void changed(Collection<String> keys) {
+        throw new RuntimeException("sorry");
+      }
+
+      @Override
+      public void resync() {
+        throw new RuntimeException("sorry");
+      }
+    });
+
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    subscriber.pubSub.onMessage(CHANNEL, RedisChangeSubscriber.encode("other", Arrays.asList("a")));
+    subscriber.close();
+  }
+
+  @Test
+  public void testChangedKeysAreDroppedFromCache() {
+    CountingLoader loader = new CountingLoader();
+    LoadingCache<String, Optional<FeatureFlag>> cache = CacheBuilder.newBuilder().build(loader);
+    RedisChangeSubscriber subscriber = new RedisChangeSubscriber("changes",
+        new RedisFeatureStore.ChangeHandler(cache, null));
+    cache.getUnchecked("a");
+    cache.getUnchecked("b");
+
+    subscriber.pubSub.onMessage(CHANNEL, RedisChangeSubscriber.encode("other", Arrays.asList("a")));
+    cache.getUnchecked("a");
+    cache.getUnchecked("b");
+    Assert.assertEquals(Arrays.asList("a", "b", "a"), loader.loaded);
+
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    cache.getUnchecked("b");
+    Assert.assertEquals(Arrays.asList("a", "b", "a", "b"), loader.loaded);
+    subscriber.close();
+  }
+
+  @Test
+  public void testChangedKeysAreReloadedIntoMirror() {
+    FeatureFlagMirrorTest.FakeSource source = new FeatureFlagMirrorTest.FakeSource();
+    source.store(new FeatureFlagBuilder("a").version(1).build());
+    source.store(new FeatureFlagBuilder("b").version(1).build());
+    FeatureFlagMirror mirror = new FeatureFlagMirror(source);
+    mirror.refresh();
+    RedisChangeSubscriber subscriber = new RedisChangeSubscriber("changes",
+        new RedisFeatureStore.ChangeHandler(null, mirror));
+
+    source.store(new FeatureFlagBuilder("a").version(2).build());
+    source.store(new FeatureFlagBuilder("b").version(2).build());
+    subscriber.pubSub.onMessage(CHANNEL, RedisChangeSubscriber.encode("other", Arrays.asList("a")));
+    Assert.assertEquals(Arrays.asList("a"), source.fetched);
+    Assert.assertEquals(2, mirror.get("a").getVersion());
+    Assert.assertEquals(1, mirror.get("b").getVersion());
+
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    subscriber.pubSub.onSubscribe(CHANNEL, 1);
+    Assert.assertEquals(2, mirror.get("b").getVersion());
+    subscriber.close();
+  }
+
+  @Test
+  public void testCloseBeforeSubscriptionIsConfirmed() throws Exception {
+    final CountDownLatch subscribing = new CountDownLatch(1);
+    final CountDownLatch disconnected = new CountDownLatch(1);
+    // Accepts the connection but never answers, so the subscriber waits for its first confirmation
+    try (final ServerSocket server = new ServerSocket(0)) {
+      Thread t = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try (Socket socket = server.accept()) {
+            InputStream in = socket.getInputStream();
+            in.read();
+            subscribing.countDown();
+            while (in.read() != -1) {
+            }
+          } catch (IOException e) {
+            // A reset ends the connection too
+          }
+          disconnected.countDown();
+        }
+      });
+      t.setDaemon(true);
+      t.start();
+      JedisPool pool = new JedisPool(new JedisPoolConfig(), "localhost", server.getLocalPort(), 0);
+      RedisChangeSubscriber subscriber = new RedisChangeSubscriber(pool, "changes", new RecordingHandler());
+      try {
+        Assert.assertTrue(subscribing.await(5, TimeUnit.SECONDS));
+        subscriber.close();
+        Assert.assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+      } finally {
+        pool.destroy();
+      }
+    }
+  }
+
+  private static class RecordingHandler implements RedisChangeSubscriber.Handler {
+    final List<String> changed = new ArrayList<>();
+    int resyncs;
+
+    @Override
+    public void changed(Collection<String> keys) {
+      changed.addAll(keys);
+    }
+
+    @Override
+    public void resync() {
+      resyncs++;
+    }
+  }
+
+  private static class CountingLoader extends CacheLoader<String, Optional<FeatureFlag>> {
+    final List<String> loaded = new ArrayList<>();
+
+    @Override
+    public Optional<FeatureFlag> load(String key) {
+      loaded.add(key);
+      return Optional.absent();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package com.launchdarkly.client;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs against a Redis server on localhost:6379, and is skipped if there is none.
+ */
+public class RedisFeatureStoreTest {
+  private static final URI REDIS_URI = URI.create("redis://localhost:6379");
+
+  private String prefix;
+  private Jedis jedis;
+
+  @Before
+  public void before() {
+    jedis = new Jedis(REDIS_URI);
+    try {
+      jedis.ping();
+    } catch (JedisConnectionException e) {
+      Assume.assumeNoException(e);
+    }
+    prefix = "test-" + UUID.randomUUID();
+  }
+
+  @After
+  public void after() {
+    if (prefix != null) {
+      jedis.del(prefix + ":features", prefix + ":features:versions", prefix + ":$inited");
+    }
+    jedis.close();
+  }
+
+  private RedisFeatureStore newStore(FeatureFlagEncoding encoding) {
+    return new RedisFeatureStoreBuilder(REDIS_URI, 0).prefix(prefix).encoding(encoding).build();
+  }
+
+  private String storedVersion(String key) {
+    return jedis.hget(prefix + ":features:versions", key);
+  }
+
+  @Test
+  public void testUpsertWritesNewerVersion() throws IOException {
+    try (RedisFeatureStore store = newStore(FeatureFlagEncoding.JSON)) {
+      store.init(Collections.singletonMap("a", new FeatureFlagBuilder("a").version(1).build()));
+      store.upsert("a", new FeatureFlagBuilder("a").version(2).build());
+
+      assertEquals(2, store.get("a").getVersion());
+      assertEquals("2", storedVersion("a"));
+    }
+  }
+
+  @Test
+  public void testUpsertIgnoresStaleVersion() throws IOException {
+    try (RedisFeatureStore store = newStore(FeatureFlagEncoding.BINARY)) {
+      store.init(Collections.singletonMap("a", new FeatureFlagBuilder("a").version(5).build()));
+      store.upsert("a", new FeatureFlagBuilder("a").version(5).on(true).build());
+      store.delete("a", 4);
+
+      assertEquals(5, store.get("a").getVersion());
+      assertEquals(false, store.get("a").isOn());
+    }
+  }
+
+  @Test
+  public void testUpsertComparesRecordedVersion() throws IOException {
+    try (RedisFeatureStore store = newStore(FeatureFlagEncoding.BINARY)) {
+      store.init(Collections.singletonMap("a", new FeatureFlagBuilder("a").version(1).build()));
+      jedis.hset(prefix + ":features:versions", "a", "7");
+
+      store.upsert("a", new FeatureFlagBuilder("a").version(3).build());
+      assertEquals(1, store.get("a").getVersion());
+
+      store.upsert("a", new FeatureFlagBuilder("a").version(8).build());
+      assertEquals(8, store.get("a").getVersion());
+      assertEquals("8", storedVersion("a"));
+    }
+  }
+
+  @Test
+  public void testUpsertRecordsVersionOfFlagWrittenByOlderSdk() throws IOException {
+    try (RedisFeatureStore store = newStore(FeatureFlagEncoding.JSON)) {
+      // As an older SDK writes it, without a versions hash entry
+      String legacy = "{\"key\":\"a\",\"version\":7,\"on\":true}";
+      jedis.hset(prefix + ":features", "a", legacy);
+
+      store.delete("a", 6);
+      assertEquals(legacy, jedis.hget(prefix + ":features", "a"));
+      assertEquals("7", storedVersion("a"));
+
+      store.delete("a", 8);
+      assertNull(store.get("a"));
+      assertEquals("8", storedVersion("a"));
+    }
+  }
+
+  @Test
+  public void testUpsertWritesNewFlag() throws IOException {
+    try (RedisFeatureStore store = newStore(FeatureFlagEncoding.JSON)) {
+      store.upsert("a", new FeatureFlagBuilder("a").version(1).build());
+
+      assertEquals(1, store.get("a").getVersion());
+      assertEquals("1", storedVersion("a"));
+    }
+  }
+
+  @Test
+  public void testInitWritesOnlyChangedFlags() throws IOException {
+    try (RedisFeatureStore store = newStore(FeatureFlagEncoding.JSON)) {
+      Map<String, FeatureFlag> flags = new HashMap<>();
+      flags.put("a", new FeatureFlagBuilder("a").version(1).build());
+      flags.put("b", new FeatureFlagBuilder("b").version(1).build());
+      flags.put("c", new FeatureFlagBuilder("c").version(1).build());
+      store.init(flags);
+      // Same version, so init must leave it as it is
+      String unchanged = "{\"key\":\"a\",\"version\":1,\"on\":true}";
+      jedis.hset(prefix + ":features", "a", unchanged);
+      // Written by an older SDK, so its version is not recorded
+      jedis.hset(prefix + ":features", "b", "{\"key\":\"b\",\"version\":9}");
+      jedis.hdel(prefix + ":features:versions", "b");
+
+      flags.remove("c");
+      flags.put("d", new FeatureFlagBuilder("d").version(1).build());
+      store.init(flags);
+
+      assertEquals(unchanged, jedis.hget(prefix + ":features", "a"));
+      assertEquals(1, store.get("b").getVersion());
+      assertEquals("1", storedVersion("b"));
+      assertFalse(jedis.hexists(prefix + ":features", "c"));
+      assertFalse(jedis.hexists(prefix + ":features:versions", "c"));
+      assertEquals(1, store.get("d").getVersion());
+      assertEquals("1", storedVersion("d"));
+    }
+  }
+}
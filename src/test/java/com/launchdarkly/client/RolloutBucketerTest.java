@@ -0,0 +1,69 @@
+package com.launchdarkly.client;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RolloutBucketerTest {
+  private static final float long_scale = (float) 0xFFFFFFFFFFFFFFFL;
+
+  @Test
+  public void testBucketValueMatchesHexDigest() {
+    RolloutBucketer bucketer = new RolloutBucketer("hashKey", "saltyA", null);
+    assertEquals(expectedBucket("hashKey", "saltyA", "userKeyA"), bucketer.bucketValue(new LDUser("userKeyA")));
+    assertEquals(expectedBucket("hashKey", "saltyA", "userKeyB"), bucketer.bucketValue(new LDUser("userKeyB")));
+  }
+
+  @Test
+  public void testBucketValueUsesSecondaryKey() {
+    RolloutBucketer bucketer = new RolloutBucketer("hashKey", "saltyA", null);
+    LDUser user = new LDUser.Builder("userKeyA").secondary("999").build();
+    assertEquals(expectedBucket("hashKey", "saltyA", "userKeyA.999"), bucketer.bucketValue(user));
+  }
+
+  @Test
+  public void testBucketValueEncodesNonAsciiLikeStringGetBytes() {
+    RolloutBucketer bucketer = new RolloutBucketer("flag", "salt", null);
+    String[] keys = {"caf\u00e9", "\u65e5\u672c", "\ud83d\ude00", "lone\ud83dsurrogate", "end\ude00"};
+    for (String key : keys) {
+      assertEquals(key, expectedBucket("flag", "salt", key), bucketer.bucketValue(new LDUser(key)));
+    }
+  }
+
+  @Test
+  public void testBucketValueUsesBucketByAttribute() {
+    RolloutBucketer bucketer = new RolloutBucketer("flag", "salt", "group");
+    LDUser user = new LDUser.Builder("userKey").custom("group", "admins").build();
+    assertEquals(expectedBucket("flag", "salt", "admins"), bucketer.bucketValue(user));
+    assertEquals(0L, bucketer.bucketValue(new LDUser.Builder("userKey").custom("group", 3).build()));
+  }
+
+  @Test
+  public void testThresholdsMatchFloatComparison() {
+    Random random = new Random(1234);
+    int[] weights = {0, 1, 7, 33333, 33334, 50000, 60000, 99999, 100000};
+    for (int weight : weights) {
+      float sum = (float) weight / 100000F;
+      long threshold = RolloutBucketer.threshold(sum);
+      for (long bucket : new long[]{threshold - 1, threshold, threshold + 1, 0L, RolloutBucketer.BUCKET_LIMIT - 1}) {
+        if (bucket < 0 || bucket >= RolloutBucketer.BUCKET_LIMIT) {
+          continue;
+        }
+        assertEquals((float) bucket / long_scale < sum, bucket < threshold);
+      }
+      for (int i = 0; i < 1000; i++) {
+        long bucket = random.nextLong() >>> 4;
+        assertEquals((float) bucket / long_scale < sum, bucket < threshold);
+      }
+    }
+    assertTrue(RolloutBucketer.threshold(1.5F) == RolloutBucketer.BUCKET_LIMIT);
+  }
+
+  private static long expectedBucket(String key, String salt, String id) {
+    return Long.parseLong(DigestUtils.sha1Hex(key + "." + salt + "." + id).substring(0, 15), 16);
+  }
+}
@@ -0,0 +1,56 @@
+package com.launchdarkly.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TargetIndexTest {
+  private final CompiledFlag.Variation[] variations = new CompiledFlag(new FeatureFlagBuilder("flag")
+      .variations(Arrays.<JsonElement>asList(new JsonPrimitive("a"), new JsonPrimitive("b"), new JsonPrimitive("c")))
+      .build()).getVariations();
+
+  @Test
+  public void testEmptyIndexMatchesNothing() {
+    TargetIndex index = TargetIndex.build(new ArrayList<Target>(), variations);
+    assertNull(index.get("userkey"));
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testFirstTargetListWins() throws EvaluationException {
+    TargetIndex index = TargetIndex.build(Arrays.asList(
+        new Target(Arrays.asList("a1", "shared"), 0),
+        new Target(Arrays.asList("shared", "b1"), 1)), variations);
+
+    assertEquals(new JsonPrimitive("a"), index.get("a1").getValue());
+    assertEquals(new JsonPrimitive("b"), index.get("b1").getValue());
+    assertEquals(new JsonPrimitive("a"), index.get("shared").getValue());
+    assertNull(index.get("other"));
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  public void testLargeTargetList() throws EvaluationException {
+    List<String> first = new ArrayList<>();
+    List<String> second = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      first.add("user-" + i);
+      second.add("other-" + i);
+    }
+    TargetIndex index = TargetIndex.build(Arrays.asList(new Target(first, 2), new Target(second, 1)), variations);
+
+    for (int i = 0; i < 50000; i++) {
+      assertEquals(new JsonPrimitive("c"), index.get("user-" + i).getValue());
+      assertEquals(new JsonPrimitive("b"), index.get("other-" + i).getValue());
+    }
+    assertNull(index.get("user-50000"));
+    assertEquals(100000, index.size());
+  }
+}
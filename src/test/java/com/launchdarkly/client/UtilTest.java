@@ -72,4 +72,29 @@ public class UtilTest {
     DateTime actual = Util.jsonPrimitiveToDateTime(new JsonPrimitive(invalidTimestamp));
     Assert.assertNull(actual);
   }
+
+  @Test
+  public void testMillisConversionAgreesWithDateTimeConversion() {
+    String[] stamps = {
+        "2016-04-16T17:09:12.759-07:00",
+        "1970-01-01T00:00:01.001Z",
+        "2016-04-16T17:09:12.759",
+        "2016-04-16T17:09:12",
+        "2016-04-16T17:09:12.7591234+05:30",
+        "2016-04-16T17:09:12.7Z",
+        "2024-02-29T23:59:59Z",
+        "1969-12-31T23:59:59.999Z",
+        "0001-01-01T00:00:00Z",
+        "2016-04-16",
+        "2016-04-16T17:09",
+        "2016-02-30T00:00:00Z",
+        "May 3, 1980"
+    };
+    for (String stamp : stamps) {
+      DateTime expected = Util.jsonPrimitiveToDateTime(new JsonPrimitive(stamp));
+      long actual = Util.jsonPrimitiveToMillis(new JsonPrimitive(stamp));
+      Assert.assertEquals(stamp, expected == null ? Util.INVALID_TIMESTAMP : expected.getMillis(), actual);
+    }
+    Assert.assertEquals(-1000L, Util.jsonPrimitiveToMillis(new JsonPrimitive(-1000)));
+  }
 }